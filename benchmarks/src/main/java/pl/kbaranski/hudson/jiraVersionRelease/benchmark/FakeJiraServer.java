@@ -0,0 +1,568 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Embedded stand-in of JIRA SOAP service ({@code jirasoapservice-v2})
+ * implementing operations used by the plugin: {@code login},
+ * {@code getVersions}, {@code releaseVersion}, {@code addVersion},
+ * {@code archiveVersion}, {@code logout} and {@code getProjectByKey}. Projects
+ * are created on first use with {@link FakeJiraServer#setVersions(int)}
+ * versions, of which {@link FakeJiraServer#setUnreleased(int)} last ones are
+ * not released. Released versions were released one per day, the last one
+ * yesterday.
+ * <p>
+ * Every call waits for configured latency and may fail with injected SOAP
+ * fault, authentication fault or HTTP 503. Calls are counted by operation.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class FakeJiraServer {
+
+    /** Path of SOAP service, the same as in JIRA. */
+    public static final String PATH = "/rpc/soap/jirasoapservice-v2";
+
+    private static final String SOAP_ENVELOPE = "http://schemas.xmlsoap.org/soap/envelope/";
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    }
+
+    /** Versions of projects by project key. */
+    private final ConcurrentMap<String, Project> projects = new ConcurrentHashMap<String, Project>();
+
+    /** Number of calls by operation name. */
+    private final ConcurrentMap<String, AtomicLong> calls = new ConcurrentHashMap<String, AtomicLong>();
+
+    /** Source of session tokens and version ids. */
+    private final AtomicLong sequence = new AtomicLong(100000);
+
+    private final Random random = new Random();
+
+    private int versions = 100;
+
+    private int unreleased = 1;
+
+    private long latency;
+
+    private long jitter;
+
+    private double faultRate;
+
+    private double authFaultRate;
+
+    private double unavailableRate;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * Sets number of versions of each project.
+     * 
+     * @param versions
+     *            Number of versions, named {@code 1.0.1} to
+     *            {@code 1.0.versions}.
+     */
+    public void setVersions(int versions) {
+        this.versions = versions;
+    }
+
+    /**
+     * Sets number of not released versions of each project; these are the
+     * versions with the highest numbers.
+     * 
+     * @param unreleased
+     *            Number of not released versions.
+     */
+    public void setUnreleased(int unreleased) {
+        this.unreleased = unreleased;
+    }
+
+    /**
+     * Sets time each call waits before response is sent.
+     * 
+     * @param latency
+     *            Fixed part of the time in milliseconds.
+     * @param jitter
+     *            Maximum random part of the time in milliseconds.
+     */
+    public void setLatency(long latency, long jitter) {
+        this.latency = latency;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Sets probability that call fails with {@code RemoteException} fault.
+     * 
+     * @param faultRate
+     *            Probability between {@code 0} and {@code 1}.
+     */
+    public void setFaultRate(double faultRate) {
+        this.faultRate = faultRate;
+    }
+
+    /**
+     * Sets probability that call fails with
+     * {@code RemoteAuthenticationException} fault, as if session expired.
+     * 
+     * @param authFaultRate
+     *            Probability between {@code 0} and {@code 1}.
+     */
+    public void setAuthFaultRate(double authFaultRate) {
+        this.authFaultRate = authFaultRate;
+    }
+
+    /**
+     * Sets probability that call fails with HTTP 503 before it is processed.
+     * 
+     * @param unavailableRate
+     *            Probability between {@code 0} and {@code 1}.
+     */
+    public void setUnavailableRate(double unavailableRate) {
+        this.unavailableRate = unavailableRate;
+    }
+
+    /**
+     * Starts server on random free port of loopback interface.
+     * 
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        server.createContext(PATH, new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    FakeJiraServer.this.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns URL of SOAP service, as configured in JIRA instance of the
+     * plugin.
+     * 
+     * @return URL of SOAP service.
+     */
+    public URL getUrl() {
+        try {
+            return new URL("http", "127.0.0.1", server.getAddress().getPort(), PATH);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns numbers of calls made so far.
+     * 
+     * @return Number of calls by operation name, sorted by name.
+     */
+    public Map<String, Long> getCalls() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : calls.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    /**
+     * Returns total number of calls made so far.
+     * 
+     * @return Number of calls of all operations.
+     */
+    public long getTotalCalls() {
+        long total = 0;
+        for (AtomicLong count : calls.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    public void resetCalls() {
+        calls.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Request request;
+        InputStream in = exchange.getRequestBody();
+        try {
+            request = Request.read(in);
+        } catch (XMLStreamException e) {
+            send(exchange, 500, fault("soapenv:Client", "Malformed request: " + e.getMessage()));
+            return;
+        } finally {
+            in.close();
+        }
+        count(request.operation);
+        pause();
+
+        double dice;
+        synchronized (random) {
+            dice = random.nextDouble();
+        }
+        if (dice < unavailableRate) {
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            byte[] body = "<html><body>Service Unavailable</body></html>".getBytes("UTF-8");
+            exchange.sendResponseHeaders(503, body.length);
+            exchange.getResponseBody().write(body);
+            return;
+        }
+        dice -= unavailableRate;
+        if (dice < authFaultRate && !"login".equals(request.operation)) {
+            send(exchange, 500, fault("soapenv:Server.userException",
+                    "com.atlassian.jira.rpc.exception.RemoteAuthenticationException: Session expired"));
+            return;
+        }
+        dice -= authFaultRate;
+        if (dice < faultRate) {
+            send(exchange, 500, fault("soapenv:Server.userException",
+                    "com.atlassian.jira.rpc.exception.RemoteException: Injected fault"));
+            return;
+        }
+
+        String response;
+        if ("login".equals(request.operation)) {
+            response = string("login", "token-" + sequence.incrementAndGet());
+        } else if ("logout".equals(request.operation)) {
+            response = result("logout", "<logoutReturn xsi:type=\"xsd:boolean\">true</logoutReturn>");
+        } else if ("getVersions".equals(request.operation)) {
+            response = getVersions(request.param(1));
+        } else if ("releaseVersion".equals(request.operation)) {
+            getProject(request.param(1)).release(request.id, request.name);
+            response = result("releaseVersion", "");
+        } else if ("archiveVersion".equals(request.operation)) {
+            getProject(request.param(1)).archive(request.param(2), Boolean.parseBoolean(request.param(3)));
+            response = result("archiveVersion", "");
+        } else if ("addVersion".equals(request.operation)) {
+            RemoteVersion created = getProject(request.param(1)).add(request.name);
+            StringBuilder version = new StringBuilder();
+            appendVersion(version, "addVersionReturn", created);
+            response = result("addVersion", version.toString());
+        } else if ("getProjectByKey".equals(request.operation)) {
+            response = getProjectByKey(request.param(1));
+        } else {
+            send(exchange, 500, fault("soapenv:Server", "No such operation '" + request.operation + "'"));
+            return;
+        }
+        send(exchange, 200, response);
+    }
+
+    private void count(String operation) {
+        AtomicLong count = calls.get(operation);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = calls.putIfAbsent(operation, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private void pause() {
+        long wait = latency;
+        if (jitter > 0) {
+            synchronized (random) {
+                wait += (long) (random.nextDouble() * jitter);
+            }
+        }
+        if (wait <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Project getProject(String key) {
+        Project project = projects.get(key);
+        if (project == null) {
+            Project created = new Project(versions, unreleased);
+            project = projects.putIfAbsent(key, created);
+            if (project == null) {
+                project = created;
+            }
+        }
+        return project;
+    }
+
+    private String getVersions(String projectKey) {
+        RemoteVersion[] all = getProject(projectKey).getVersions();
+        StringBuilder array = new StringBuilder(all.length * 400 + 400);
+        array.append("<getVersionsReturn soapenc:arrayType=\"ns2:RemoteVersion[").append(all.length)
+                .append("]\" xsi:type=\"soapenc:Array\">");
+        for (RemoteVersion version : all) {
+            appendVersion(array, "getVersionsReturn", version);
+        }
+        array.append("</getVersionsReturn>");
+        return result("getVersions", array.toString());
+    }
+
+    private String getProjectByKey(String projectKey) {
+        getProject(projectKey);
+        StringBuilder project = new StringBuilder();
+        project.append("<getProjectByKeyReturn xsi:type=\"ns2:RemoteProject\">");
+        project.append("<id xsi:type=\"xsd:string\">").append(Math.abs(projectKey.hashCode())).append("</id>");
+        project.append("<key xsi:type=\"xsd:string\">").append(escape(projectKey)).append("</key>");
+        project.append("<lead xsi:type=\"xsd:string\">admin</lead>");
+        project.append("<name xsi:type=\"xsd:string\">").append(escape(projectKey)).append("</name>");
+        project.append("</getProjectByKeyReturn>");
+        return result("getProjectByKey", project.toString());
+    }
+
+    private static void appendVersion(StringBuilder out, String element, RemoteVersion version) {
+        out.append('<').append(element).append(" xsi:type=\"ns2:RemoteVersion\">");
+        out.append("<id xsi:type=\"xsd:string\">").append(escape(version.getId())).append("</id>");
+        out.append("<name xsi:type=\"xsd:string\">").append(escape(version.getName())).append("</name>");
+        out.append("<archived xsi:type=\"xsd:boolean\">").append(version.isArchived()).append("</archived>");
+        if (version.getReleaseDate() == null) {
+            out.append("<releaseDate xsi:type=\"xsd:dateTime\" xsi:nil=\"true\"/>");
+        } else {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            out.append("<releaseDate xsi:type=\"xsd:dateTime\">").append(
+                    format.format(version.getReleaseDate().getTime())).append("</releaseDate>");
+        }
+        out.append("<released xsi:type=\"xsd:boolean\">").append(version.isReleased()).append("</released>");
+        out.append("<sequence xsi:type=\"xsd:long\">").append(version.getSequence()).append("</sequence>");
+        out.append("</").append(element).append('>');
+    }
+
+    private static String string(String operation, String value) {
+        return result(operation, "<" + operation + "Return xsi:type=\"xsd:string\">" + escape(value) + "</"
+                + operation + "Return>");
+    }
+
+    private static String result(String operation, String content) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\""
+                + " xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"><soapenv:Body>"
+                + "<ns1:" + operation + "Response"
+                + " soapenv:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\""
+                + " xmlns:ns1=\"http://soap.rpc.jira.atlassian.com\""
+                + " xmlns:ns2=\"http://beans.soap.rpc.jira.atlassian.com\""
+                + " xmlns:soapenc=\"http://schemas.xmlsoap.org/soap/encoding/\">" + content
+                + "</ns1:" + operation + "Response></soapenv:Body></soapenv:Envelope>";
+    }
+
+    private static String fault(String code, String message) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+                + "<soapenv:Fault><faultcode>" + code + "</faultcode><faultstring>" + escape(message)
+                + "</faultstring></soapenv:Fault></soapenv:Body></soapenv:Envelope>";
+    }
+
+    private static void send(HttpExchange exchange, int status, String response) throws IOException {
+        byte[] body = response.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.flush();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    /**
+     * Call decoded from SOAP request. Parameters are kept by position; of
+     * {@code RemoteVersion} parameter (sent inline or as multi-reference) only
+     * id and name are kept.
+     */
+    private static class Request {
+        private String operation;
+        private final List<String> params = new ArrayList<String>();
+        private String id;
+        private String name;
+
+        static Request read(InputStream in) throws XMLStreamException {
+            Request request = new Request();
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+            try {
+                int depth = 0;
+                int bodyDepth = -1;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                        continue;
+                    }
+                    if (event != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    depth++;
+                    String element = reader.getLocalName();
+                    if ("Body".equals(element) && SOAP_ENVELOPE.equals(reader.getNamespaceURI())) {
+                        bodyDepth = depth;
+                    } else if (bodyDepth > 0 && depth == bodyDepth + 1 && request.operation == null) {
+                        request.operation = element;
+                    } else if (depth == bodyDepth + 2 && element.matches("in\\d+") && isSimple(reader)) {
+                        int index = Integer.parseInt(element.substring(2));
+                        while (request.params.size() <= index) {
+                            request.params.add(null);
+                        }
+                        request.params.set(index, reader.getElementText());
+                        depth--;
+                    } else if ("id".equals(element)) {
+                        request.id = reader.getElementText();
+                        depth--;
+                    } else if ("name".equals(element)) {
+                        request.name = reader.getElementText();
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            return request;
+        }
+
+        private static boolean isSimple(XMLStreamReader reader) {
+            String type = reader.getAttributeValue("http://www.w3.org/2001/XMLSchema-instance", "type");
+            return type != null && type.startsWith("xsd:");
+        }
+
+        String param(int index) {
+            return index < params.size() ? params.get(index) : null;
+        }
+    }
+
+    /**
+     * Versions of single project.
+     */
+    private class Project {
+        private final Map<String, RemoteVersion> byId = new HashMap<String, RemoteVersion>();
+        private final List<RemoteVersion> versions = new ArrayList<RemoteVersion>();
+
+        Project(int count, int unreleased) {
+            int released = count - unreleased;
+            for (int i = 1; i <= count; i++) {
+                Calendar releaseDate = null;
+                if (i <= released) {
+                    releaseDate = Calendar.getInstance();
+                    releaseDate.add(Calendar.DAY_OF_MONTH, i - released - 1);
+                }
+                RemoteVersion version = new RemoteVersion(Long.toString(sequence.incrementAndGet()), "1.0." + i,
+                        false, releaseDate, i <= released, Long.valueOf(i));
+                versions.add(version);
+                byId.put(version.getId(), version);
+            }
+        }
+
+        synchronized RemoteVersion[] getVersions() {
+            return versions.toArray(new RemoteVersion[versions.size()]);
+        }
+
+        synchronized void release(String id, String name) {
+            RemoteVersion version = id == null ? null : byId.get(id);
+            if (version == null) {
+                for (RemoteVersion candidate : versions) {
+                    if (candidate.getName().equals(name)) {
+                        version = candidate;
+                    }
+                }
+            }
+            if (version != null) {
+                version.setReleased(true);
+                version.setReleaseDate(Calendar.getInstance());
+            }
+        }
+
+        synchronized void archive(String name, boolean archived) {
+            for (RemoteVersion version : versions) {
+                if (version.getName().equals(name)) {
+                    version.setArchived(archived);
+                }
+            }
+        }
+
+        synchronized RemoteVersion add(String name) {
+            for (RemoteVersion existing : versions) {
+                if (existing.getName().equals(name)) {
+                    return existing;
+                }
+            }
+            RemoteVersion version = new RemoteVersion(Long.toString(sequence.incrementAndGet()), name, false, null,
+                    false, Long.valueOf(versions.size() + 1));
+            versions.add(version);
+            byId.put(version.getId(), version);
+            return version;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease.benchmark;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+
+import pl.kbaranski.hudson.jiraVersionRelease.JiraClient;
+import pl.kbaranski.hudson.jiraVersionRelease.JiraClientRegistry;
+import pl.kbaranski.hudson.jiraVersionRelease.PooledConnectionManager;
+import pl.kbaranski.hudson.jiraVersionRelease.TrackerInstance;
+
+/**
+ * {@link JiraClientRegistry} of single JIRA instance which calls go to
+ * {@link InMemoryJiraClient}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class InMemoryClientRegistry extends JiraClientRegistry {
+
+    /** Name of the only JIRA instance. */
+    public static final String INSTANCE = "benchmark";
+
+    /** Client used for all calls. */
+    private final JiraClient client;
+
+    public InMemoryClientRegistry(JiraClient client) {
+        this.client = client;
+        try {
+            update(Collections.singletonList(new TrackerInstance(INSTANCE, new URL("http://localhost/"), "user",
+                    "pass")));
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    protected JiraClient createClient(TrackerInstance instance, PooledConnectionManager connectionManager) {
+        return client;
+    }
+}
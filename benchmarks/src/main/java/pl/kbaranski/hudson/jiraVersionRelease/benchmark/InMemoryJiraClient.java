@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.kbaranski.hudson.jiraVersionRelease.JiraClient;
+import pl.kbaranski.hudson.jiraVersionRelease.VersionVisitor;
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteIssue;
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * {@link JiraClient} keeping versions of projects in memory, used instead of
+ * real JIRA by benchmarks. Versions returned to callers are the stored
+ * objects, the same way Axis returns freshly deserialized objects that are
+ * not shared with anybody else.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class InMemoryJiraClient implements JiraClient {
+
+    /** Versions by project key. */
+    private final Map<String, List<RemoteVersion>> projects = new HashMap<String, List<RemoteVersion>>();
+
+    /** Source of version ids. */
+    private final AtomicLong nextId = new AtomicLong(1000000);
+
+    /** Number of issues fixed in every version. */
+    private volatile int issuesPerVersion;
+
+    /**
+     * Sets number of issues fixed in every version. Issues are generated when
+     * searched, one page at a time, and are numbered from 1 in each version.
+     * 
+     * @param issuesPerVersion
+     *            Number of issues.
+     */
+    public void setIssuesPerVersion(int issuesPerVersion) {
+        this.issuesPerVersion = issuesPerVersion;
+    }
+
+    /**
+     * Replaces versions of the project.
+     * 
+     * @param projectKey
+     *            Key of JIRA project.
+     * @param versions
+     *            New versions of the project.
+     */
+    public synchronized void setVersions(String projectKey, RemoteVersion[] versions) {
+        List<RemoteVersion> list = new ArrayList<RemoteVersion>(versions.length + 1024);
+        for (RemoteVersion version : versions) {
+            list.add(version);
+        }
+        projects.put(projectKey, list);
+    }
+
+    public String login(String user, String pass) {
+        return "token";
+    }
+
+    public synchronized RemoteVersion[] getVersions(String token, String projectKey) {
+        List<RemoteVersion> versions = get(projectKey);
+        return versions.toArray(new RemoteVersion[versions.size()]);
+    }
+
+    public void visitUnreleasedVersions(String token, String projectKey, VersionVisitor visitor) {
+        for (RemoteVersion version : getVersions(token, projectKey)) {
+            if (!version.isReleased() && !version.isArchived() && !visitor.visit(version)) {
+                return;
+            }
+        }
+    }
+
+    public synchronized void releaseVersion(String token, String projectKey, RemoteVersion version) {
+        for (RemoteVersion stored : get(projectKey)) {
+            if (stored.getId().equals(version.getId())) {
+                stored.setReleased(true);
+                stored.setReleaseDate(version.getReleaseDate());
+                return;
+            }
+        }
+    }
+
+    public synchronized void archiveVersion(String token, String projectKey, RemoteVersion version) {
+        for (RemoteVersion stored : get(projectKey)) {
+            if (stored.getId().equals(version.getId())) {
+                stored.setArchived(true);
+                return;
+            }
+        }
+    }
+
+    public synchronized RemoteVersion addVersion(String token, String projectKey, RemoteVersion version) {
+        RemoteVersion created = new RemoteVersion(Long.toString(nextId.incrementAndGet()), version.getName(), false,
+                null, false, null);
+        get(projectKey).add(created);
+        return created;
+    }
+
+    public RemoteIssue[] getFixedIssues(String token, String projectKey, String versionName, String afterKey,
+            int maxResults) {
+        int first = afterKey == null ? 1 : Integer.parseInt(afterKey.substring(afterKey.lastIndexOf('-') + 1)) + 1;
+        int count = Math.max(0, Math.min(maxResults, issuesPerVersion - first + 1));
+        RemoteIssue[] issues = new RemoteIssue[count];
+        for (int i = 0; i < count; i++) {
+            issues[i] = new RemoteIssue();
+            issues[i].setKey(projectKey + "-" + (first + i));
+            issues[i].setSummary("Issue " + (first + i) + " fixed in " + versionName);
+        }
+        return issues;
+    }
+
+    public boolean logout(String token) {
+        return true;
+    }
+
+    private List<RemoteVersion> get(String projectKey) {
+        List<RemoteVersion> versions = projects.get(projectKey);
+        if (versions == null) {
+            versions = new ArrayList<RemoteVersion>();
+            projects.put(projectKey, versions);
+        }
+        return versions;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease.benchmark;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pl.kbaranski.hudson.jiraVersionRelease.JiraClientRegistry;
+import pl.kbaranski.hudson.jiraVersionRelease.JiraMetrics;
+import pl.kbaranski.hudson.jiraVersionRelease.JiraOperation;
+import pl.kbaranski.hudson.jiraVersionRelease.OperationMetrics;
+import pl.kbaranski.hudson.jiraVersionRelease.ReleaseResult;
+import pl.kbaranski.hudson.jiraVersionRelease.ReleaseTask;
+import pl.kbaranski.hudson.jiraVersionRelease.TrackerInstance;
+import pl.kbaranski.hudson.jiraVersionRelease.VersionNameMatcher;
+
+/**
+ * Load test of the plugin against {@link FakeJiraServer}. Runs builds of
+ * several projects at once, each build going through the same path as
+ * {@code JiraVersionReleasePublisher.perform()}: {@code ReleaseBatcher},
+ * {@code ReleaseTask} and printing the result to build log. Builds of single
+ * project run one after another, as Jenkins runs builds of a job. Reports
+ * throughput, latency percentiles of builds and SOAP calls per build.
+ * <p>
+ * Options are given as {@code name=value} arguments, e.g.
+ * {@code builds=1000 concurrency=16 projects=32 latency=20 faultRate=0.01}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class LoadTest {
+
+    private static final String INSTANCE = "load";
+
+    private final Map<String, String> options;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("Usage: LoadTest [builds=N] [concurrency=N] [projects=N] [versions=N]"
+                        + " [latency=ms] [jitter=ms] [faultRate=p] [authFaultRate=p] [unavailableRate=p]"
+                        + " [maxConnections=N] [requestsPerSecond=N] [lookahead=N] [warmUp=true] [verbose=true]");
+                System.exit(2);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new LoadTest(options).run();
+    }
+
+    private void run() throws Exception {
+        final int builds = getInt("builds", 500);
+        int concurrency = getInt("concurrency", 8);
+        int projects = getInt("projects", 16);
+        final int versions = getInt("versions", 1000);
+        final int lookahead = getInt("lookahead", 0);
+        if (!Boolean.parseBoolean(get("verbose", "false"))) {
+            // Wstrzykniete bledy sa logowane przez plugin jako SEVERE
+            Logger.getLogger("pl.kbaranski.hudson.jiraVersionRelease").setLevel(Level.OFF);
+        }
+
+        FakeJiraServer server = new FakeJiraServer();
+        server.setVersions(versions);
+        // Wersje wszystkich kompilacji istnieja od poczatku, zeby blad jednej
+        // kompilacji nie powodowal braku wersji w kolejnych
+        final int unreleased = builds / projects + 2;
+        server.setUnreleased(unreleased);
+        server.setLatency(getInt("latency", 10), getInt("jitter", 0));
+        server.setFaultRate(getDouble("faultRate", 0));
+        server.setAuthFaultRate(getDouble("authFaultRate", 0));
+        server.setUnavailableRate(getDouble("unavailableRate", 0));
+        server.start();
+
+        final JiraClientRegistry registry = new JiraClientRegistry();
+        registry.update(Collections.singletonList(new TrackerInstance(INSTANCE, server.getUrl(), "user", "pass",
+                getInt("maxConnections", 0), 0, 0, 0, false, getInt("requestsPerSecond", 0), 0)));
+        final VersionNameMatcher matcher = new VersionNameMatcher("1\\.0\\.");
+        if (Boolean.parseBoolean(get("warmUp", "false"))) {
+            registry.warmUp();
+        }
+
+        final long[] latencies = new long[builds];
+        final AtomicInteger finished = new AtomicInteger();
+        final Map<String, Integer> failures = new TreeMap<String, Integer>();
+        final AtomicInteger notFound = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int p = 0; p < projects; p++) {
+            final String projectKey = "LOAD" + p;
+            final int projectBuilds = builds / projects + (p < builds % projects ? 1 : 0);
+            final int firstBuild = versions - unreleased + 1;
+            executor.execute(new Runnable() {
+                public void run() {
+                    for (int b = 0; b < projectBuilds; b++) {
+                        long buildStart = System.nanoTime();
+                        ReleaseResult result;
+                        try {
+                            result = registry.getBatcher(INSTANCE, projectKey).release(
+                                    new ReleaseTask(registry, INSTANCE, projectKey, matcher, firstBuild + b,
+                                            lookahead));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        result.print(ReleasePathBenchmark.NULL_LOG);
+                        latencies[finished.getAndIncrement()] = System.nanoTime() - buildStart;
+                        if (result.getError() != null) {
+                            synchronized (failures) {
+                                Integer count = failures.get(result.getError());
+                                failures.put(result.getError(), count == null ? 1 : count + 1);
+                            }
+                        } else if (result.getReleasedVersion() == null) {
+                            notFound.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.DAYS);
+        long elapsed = System.nanoTime() - start;
+
+        printThrottling(registry.getMetrics(INSTANCE));
+        registry.close();
+        server.stop();
+        report(Arrays.copyOf(latencies, finished.get()), elapsed, failures, notFound.get(), server);
+    }
+
+    /**
+     * Prints time calls waited for rate limit of JIRA instance, if it was
+     * limited.
+     */
+    private static void printThrottling(JiraMetrics metrics) {
+        long calls = 0;
+        long errors = 0;
+        double totalMillis = 0;
+        double maxMillis = 0;
+        for (OperationMetrics[] project : metrics.getProjects().values()) {
+            OperationMetrics throttle = project[JiraOperation.THROTTLE.ordinal()];
+            calls += throttle.getCalls();
+            errors += throttle.getErrors();
+            totalMillis += throttle.getMeanMillis() * throttle.getCalls();
+            maxMillis = Math.max(maxMillis, throttle.getMaxMillis());
+        }
+        if (calls > 0) {
+            System.out.printf("Throttled: %d calls, waited %.2f s in total (mean %.1f ms, max %.1f ms),"
+                    + " %d not let through%n", calls, totalMillis / 1000, totalMillis / calls, maxMillis, errors);
+        }
+    }
+
+    private static void report(long[] latencies, long elapsed, Map<String, Integer> failures, int notFound,
+            FakeJiraServer server) {
+        int builds = latencies.length;
+        int failed = 0;
+        for (Integer count : failures.values()) {
+            failed += count;
+        }
+        Arrays.sort(latencies);
+        double seconds = elapsed / 1e9;
+        System.out.printf("Builds: %d (failed %d, version not found %d) in %.2f s%n", builds, failed, notFound,
+                seconds);
+        System.out.printf("Throughput: %.1f builds/s%n", builds / seconds);
+        System.out.printf("Build latency: p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                percentile(latencies, 0.5), percentile(latencies, 0.95), percentile(latencies, 0.99),
+                percentile(latencies, 1.0));
+        long total = server.getTotalCalls();
+        System.out.printf("SOAP calls: %d (%.2f per build)%n", total, perBuild(total, builds));
+        for (Map.Entry<String, Long> entry : server.getCalls().entrySet()) {
+            System.out.printf("  %-16s %8d (%.2f per build)%n", entry.getKey(), entry.getValue(),
+                    perBuild(entry.getValue(), builds));
+        }
+        for (Map.Entry<String, Integer> entry : failures.entrySet()) {
+            System.out.printf("Failed %d: %s%n", entry.getValue(), entry.getKey());
+        }
+    }
+
+    private static double percentile(long[] sorted, double q) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private static double perBuild(long calls, int builds) {
+        return builds == 0 ? 0 : (double) calls / builds;
+    }
+
+    private String get(String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private int getInt(String name, int defaultValue) {
+        return Integer.parseInt(get(name, Integer.toString(defaultValue)));
+    }
+
+    private double getDouble(String name, double defaultValue) {
+        return Double.parseDouble(get(name, Double.toString(defaultValue)));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.kbaranski.hudson.jiraVersionRelease.VersionNameMatcher;
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Measures matching version names against version name schema of a job: the
+ * cost paid per checked version when versions are scanned.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NameMatchingBenchmark {
+
+    @Param({ "1000" })
+    public int versions;
+
+    @Param({ "PLAIN", "DOTTED", "COMPLEX" })
+    public SyntheticVersions.Schema schema;
+
+    private String[] names;
+
+    private VersionNameMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        RemoteVersion[] all = SyntheticVersions.generate(versions, 0.0, schema);
+        names = new String[all.length];
+        for (int i = 0; i < all.length; i++) {
+            names[i] = all[i].getName();
+        }
+        matcher = new VersionNameMatcher(schema.getPrefixRegexp());
+    }
+
+    /**
+     * Checks all names against build which version is the last one.
+     * 
+     * @return Number of matching names.
+     */
+    @Benchmark
+    public int matchAll() {
+        VersionNameMatcher.Lookup lookup = matcher.forBuild(versions);
+        int matching = 0;
+        for (String name : names) {
+            if (lookup.matches(name)) {
+                matching++;
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Compiles version name schema, as done for every build before schema was
+     * compiled once per job.
+     * 
+     * @return Compiled schema.
+     */
+    @Benchmark
+    public VersionNameMatcher compile() {
+        return new VersionNameMatcher(schema.getPrefixRegexp());
+    }
+}
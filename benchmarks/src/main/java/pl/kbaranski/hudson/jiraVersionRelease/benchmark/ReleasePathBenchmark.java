@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.kbaranski.hudson.jiraVersionRelease.ReleaseBatcher;
+import pl.kbaranski.hudson.jiraVersionRelease.ReleaseResult;
+import pl.kbaranski.hudson.jiraVersionRelease.ReleaseTask;
+import pl.kbaranski.hudson.jiraVersionRelease.VersionNameMatcher;
+
+/**
+ * Measures the path taken by {@code JiraVersionReleasePublisher.perform()}
+ * after build: release of version of the build, creation of the next one and
+ * printing the result to build log. Publisher itself needs running Jenkins, so
+ * the same {@link ReleaseBatcher} and {@link ReleaseTask} are driven directly
+ * against {@link InMemoryJiraClient}. Batching is disabled, so the benchmark
+ * does not measure waiting for other builds.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dpl.kbaranski.hudson.jiraVersionRelease.ReleaseBatcher.window=-1")
+public class ReleasePathBenchmark {
+
+    private static final String PROJECT_KEY = "BENCH";
+
+    /** Build log that discards everything. */
+    static final PrintStream NULL_LOG = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    @Param({ "100", "10000" })
+    public int versions;
+
+    @Param({ "DOTTED" })
+    public SyntheticVersions.Schema schema;
+
+    private InMemoryClientRegistry registry;
+
+    private ReleaseBatcher batcher;
+
+    private VersionNameMatcher matcher;
+
+    /** Number of the next build; its version is the only not released one. */
+    private int buildNumber;
+
+    @Setup
+    public void setUp() {
+        InMemoryJiraClient client = new InMemoryJiraClient();
+        client.setVersions(PROJECT_KEY, SyntheticVersions.generate(versions, (versions - 1) / (double) versions,
+                schema));
+        registry = new InMemoryClientRegistry(client);
+        batcher = registry.getBatcher(InMemoryClientRegistry.INSTANCE, PROJECT_KEY);
+        matcher = new VersionNameMatcher(schema.getPrefixRegexp());
+        buildNumber = versions;
+    }
+
+    @TearDown
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Benchmark
+    public ReleaseResult release() throws InterruptedException {
+        ReleaseResult result = batcher.release(new ReleaseTask(registry, InMemoryClientRegistry.INSTANCE,
+                PROJECT_KEY, matcher, buildNumber++));
+        if (!result.isSuccess()) {
+            throw new IllegalStateException(result.getError());
+        }
+        result.print(NULL_LOG);
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease.benchmark;
+
+import java.util.Calendar;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Generates version lists similar to the ones of projects using the plugin:
+ * one version per build, all but the most recent ones released.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public final class SyntheticVersions {
+
+    /**
+     * Version name schemas used by benchmarks: name of the schema, prefix
+     * regular expression configured in job and prefix of generated names.
+     */
+    public enum Schema {
+        PLAIN("", ""), DOTTED("1\\.0\\.", "1.0."), COMPLEX("[A-Z]+-\\d+\\.\\d+(-rc)?-b", "APP-2.3-b");
+
+        private final String prefixRegexp;
+        private final String prefix;
+
+        private Schema(String prefixRegexp, String prefix) {
+            this.prefixRegexp = prefixRegexp;
+            this.prefix = prefix;
+        }
+
+        public String getPrefixRegexp() {
+            return prefixRegexp;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+    }
+
+    private SyntheticVersions() {
+    }
+
+    /**
+     * Generates versions {@code 1..count} of a project. The first
+     * {@code releasedRatio} of them is released, the rest is not.
+     * 
+     * @param count
+     *            Number of versions.
+     * @param releasedRatio
+     *            Part of versions that are released, between {@code 0} and
+     *            {@code 1}.
+     * @param schema
+     *            Schema of version names.
+     * @return Versions in order of build numbers.
+     */
+    public static RemoteVersion[] generate(int count, double releasedRatio, Schema schema) {
+        RemoteVersion[] versions = new RemoteVersion[count];
+        int released = (int) Math.round(count * releasedRatio);
+        Calendar releaseDate = Calendar.getInstance();
+        for (int i = 0; i < count; i++) {
+            int build = i + 1;
+            boolean isReleased = i < released;
+            versions[i] = new RemoteVersion(Integer.toString(10000 + build), schema.getPrefix() + build, false,
+                    isReleased ? releaseDate : null, isReleased, Long.valueOf(build));
+        }
+        return versions;
+    }
+}
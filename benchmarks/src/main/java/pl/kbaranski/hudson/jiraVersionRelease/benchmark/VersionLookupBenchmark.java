@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.kbaranski.hudson.jiraVersionRelease.JiraException;
+import pl.kbaranski.hudson.jiraVersionRelease.JiraSessionManager;
+import pl.kbaranski.hudson.jiraVersionRelease.JiraUtil;
+import pl.kbaranski.hudson.jiraVersionRelease.VersionNameMatcher;
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Measures looking up version of a build among versions of a project:
+ * <ul>
+ * <li>{@code snapshot} - linear scan of downloaded versions, as done when
+ * sessions are not shared,</li>
+ * <li>{@code indexHit} - lookup answered by version index,</li>
+ * <li>{@code indexMiss} - lookup after invalidation of version index, which
+ * reads versions from JIRA client again.</li>
+ * </ul>
+ * Version of the build is the first not released one.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class VersionLookupBenchmark {
+
+    private static final String PROJECT_KEY = "BENCH";
+
+    @Param({ "100", "1000", "10000", "100000" })
+    public int versions;
+
+    @Param({ "0.0", "0.9", "0.99" })
+    public double releasedRatio;
+
+    @Param({ "PLAIN", "DOTTED", "COMPLEX" })
+    public SyntheticVersions.Schema schema;
+
+    private RemoteVersion[] all;
+
+    private int buildNumber;
+
+    private InMemoryClientRegistry registry;
+
+    private JiraSessionManager sessionManager;
+
+    private VersionNameMatcher matcher;
+
+    @Setup
+    public void setUp() throws JiraException {
+        all = SyntheticVersions.generate(versions, releasedRatio, schema);
+        buildNumber = (int) Math.round(versions * releasedRatio) + 1;
+
+        InMemoryJiraClient client = new InMemoryJiraClient();
+        client.setVersions(PROJECT_KEY, all);
+        registry = new InMemoryClientRegistry(client);
+        sessionManager = registry.get(InMemoryClientRegistry.INSTANCE);
+        matcher = new VersionNameMatcher(schema.getPrefixRegexp());
+        if (indexHit() == null) {
+            throw new IllegalStateException("Version of build " + buildNumber + " not found");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Benchmark
+    public RemoteVersion snapshot() throws JiraException {
+        JiraUtil jiraUtil = new JiraUtil(sessionManager.getTrackerInstance(), PROJECT_KEY, schema.getPrefixRegexp());
+        jiraUtil.useVersions(Arrays.asList(all));
+        return jiraUtil.getVersion(buildNumber);
+    }
+
+    @Benchmark
+    public RemoteVersion indexHit() throws JiraException {
+        return lookup();
+    }
+
+    @Benchmark
+    public RemoteVersion indexMiss() throws JiraException {
+        sessionManager.getVersionIndex(PROJECT_KEY).invalidate();
+        return lookup();
+    }
+
+    private RemoteVersion lookup() throws JiraException {
+        JiraUtil jiraUtil = new JiraUtil(sessionManager, PROJECT_KEY, matcher);
+        jiraUtil.connect();
+        return jiraUtil.getVersion(buildNumber);
+    }
+}
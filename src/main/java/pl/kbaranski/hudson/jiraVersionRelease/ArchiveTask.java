@@ -0,0 +1,217 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Archives old released versions of single JIRA project, so they don't have
+ * to be read on every build. Versions are archived when they match version
+ * name schema of the job and are outside of retention policy: older than
+ * {@code keep} newest released versions and released more than
+ * {@code afterDays} days ago. Versions are archived oldest first, in batches
+ * separated by pause, so JIRA is not overloaded.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class ArchiveTask implements Callable<String> {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(ArchiveTask.class.getName());
+
+    /** Number of versions archived one after another, without pause. */
+    public static final int BATCH_SIZE = Integer.getInteger(ArchiveTask.class.getName() + ".batchSize", 20);
+
+    /** Pause (in milliseconds) between batches. */
+    public static final long BATCH_PAUSE = Long.getLong(ArchiveTask.class.getName() + ".batchPause", 5000L);
+
+    /** Maximum number of versions archived in single run; the rest waits for the next run. */
+    public static final int MAX_PER_RUN = Integer.getInteger(ArchiveTask.class.getName() + ".maxPerRun", 500);
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    /** Registry of JIRA clients. */
+    private final JiraClientRegistry clients;
+
+    /** Name of JIRA instance. */
+    private final String instanceName;
+
+    /** Key of JIRA project. */
+    private final String projectKey;
+
+    /** Compiled version name schema. */
+    private final VersionNameMatcher versionNameMatcher;
+
+    /** Number of the newest released versions that are never archived. */
+    private final int keep;
+
+    /** Minimal age (in days) of archived versions; {@code 0} if age is not checked. */
+    private final int afterDays;
+
+    public ArchiveTask(JiraClientRegistry clients, String instanceName, String projectKey,
+            VersionNameMatcher versionNameMatcher, int keep, int afterDays) {
+        this.clients = clients;
+        this.instanceName = instanceName;
+        this.projectKey = projectKey;
+        this.versionNameMatcher = versionNameMatcher;
+        this.keep = keep;
+        this.afterDays = afterDays;
+    }
+
+    /**
+     * Archives versions outside of retention policy.
+     * 
+     * @return Report describing archived versions and change of size of
+     *         {@code getVersions} response.
+     * @throws JiraException
+     *             If JIRA operation failed; versions archived before stay
+     *             archived.
+     * @throws InterruptedException
+     *             If interrupted during pause between batches.
+     */
+    public String call() throws JiraException, InterruptedException {
+        JiraSessionManager sessionManager = clients.get(instanceName);
+        if (sessionManager == null) {
+            return "No JIRA instance named " + instanceName;
+        }
+        JiraUtil jiraUtil = new JiraUtil(sessionManager, projectKey, versionNameMatcher);
+        jiraUtil.connect();
+        try {
+            // Liczniki operacji sa wspolne dla wszystkich kompilacji, wiec mierzymy tylko wlasne wywolanie
+            OperationMetrics.countBytes();
+            RemoteVersion[] all;
+            long bytesBefore;
+            try {
+                all = jiraUtil.fetchVersions();
+            } finally {
+                bytesBefore = OperationMetrics.countedBytes();
+            }
+            int notArchivedBefore = countNotArchived(all);
+
+            List<RemoteVersion> candidates = select(all, System.currentTimeMillis());
+            List<RemoteVersion> batch = candidates.subList(0, Math.min(candidates.size(), MAX_PER_RUN));
+            int archived = 0;
+            for (RemoteVersion version : batch) {
+                if (archived > 0 && archived % BATCH_SIZE == 0) {
+                    Thread.sleep(BATCH_PAUSE);
+                }
+                jiraUtil.archiveVersion(version);
+                archived++;
+            }
+
+            StringBuilder report = new StringBuilder();
+            report.append(projectKey).append(": archived ").append(archived).append(" of ").append(
+                    candidates.size()).append(" versions outside of retention policy (").append(all.length).append(
+                    " versions in project)");
+            if (archived > 0) {
+                OperationMetrics.countBytes();
+                RemoteVersion[] remaining;
+                long bytesAfter;
+                try {
+                    remaining = jiraUtil.fetchVersions();
+                } finally {
+                    bytesAfter = OperationMetrics.countedBytes();
+                }
+                report.append("; getVersions response: ").append(all.length).append(" -> ").append(
+                        remaining.length).append(" versions, not archived: ").append(notArchivedBefore).append(
+                        " -> ").append(countNotArchived(remaining));
+                if (bytesBefore > 0 && bytesAfter > 0) {
+                    report.append(", ").append(bytesBefore).append(" -> ").append(bytesAfter).append(" bytes (")
+                            .append(String.format("%+.1f", (bytesAfter - bytesBefore) * 100.0 / bytesBefore))
+                            .append("%)");
+                }
+            }
+            LOG.log(Level.INFO, report.toString());
+            return report.toString();
+        } finally {
+            jiraUtil.disconnect();
+        }
+    }
+
+    /**
+     * Selects released (not archived) versions that match version name
+     * schema and are outside of retention policy.
+     * 
+     * @param all
+     *            All versions of the project.
+     * @param now
+     *            Current time.
+     * @return Versions to archive, oldest first.
+     */
+    List<RemoteVersion> select(RemoteVersion[] all, long now) {
+        List<RemoteVersion> released = new ArrayList<RemoteVersion>();
+        for (RemoteVersion version : all) {
+            if (!version.isReleased() || version.isArchived()) {
+                continue;
+            }
+            int number = VersionIndex.number(version.getName());
+            if (number >= 0 && versionNameMatcher.forBuild(number).matches(version.getName())) {
+                released.add(version);
+            }
+        }
+        // Najnowsze wersje na poczatku
+        Collections.sort(released, new Comparator<RemoteVersion>() {
+            public int compare(RemoteVersion a, RemoteVersion b) {
+                int na = VersionIndex.number(a.getName());
+                int nb = VersionIndex.number(b.getName());
+                return na > nb ? -1 : na < nb ? 1 : 0;
+            }
+        });
+        List<RemoteVersion> selected = new ArrayList<RemoteVersion>();
+        for (int i = keep; i < released.size(); i++) {
+            RemoteVersion version = released.get(i);
+            if (afterDays <= 0 || isOlder(version, now - afterDays * DAY)) {
+                selected.add(version);
+            }
+        }
+        Collections.reverse(selected);
+        return selected;
+    }
+
+    private static int countNotArchived(RemoteVersion[] versions) {
+        int count = 0;
+        for (RemoteVersion version : versions) {
+            if (!version.isArchived()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether version was released before {@code time}. Versions with
+     * unknown release date are never old enough.
+     */
+    private static boolean isOlder(RemoteVersion version, long time) {
+        return version.getReleaseDate() != null && version.getReleaseDate().getTimeInMillis() < time;
+    }
+}
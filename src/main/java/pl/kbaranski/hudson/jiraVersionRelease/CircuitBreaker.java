@@ -0,0 +1,228 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.axis.AxisFault;
+
+/**
+ * Circuit breaker of single JIRA instance, shared by all jobs using it. After
+ * {@link CircuitBreaker#FAILURE_THRESHOLD} consecutive transient failures
+ * (JIRA not reachable, timeouts, HTTP 5xx) circuit is opened and calls fail
+ * immediately instead of waiting for timeouts. After
+ * {@link CircuitBreaker#OPEN_TIME} single probe call is let through; circuit
+ * is closed again when it succeeds. Faults reported by JIRA itself (e.g.
+ * validation or permission errors) mean JIRA is working and do not open the
+ * circuit.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class CircuitBreaker {
+
+    /** Number of consecutive transient failures that opens the circuit. */
+    public static final int FAILURE_THRESHOLD = Integer.getInteger(CircuitBreaker.class.getName()
+            + ".failureThreshold", 5);
+
+    /** Time (in milliseconds) circuit stays open before probe call is made. */
+    public static final long OPEN_TIME = Long.getLong(CircuitBreaker.class.getName() + ".openTime", 60 * 1000L);
+
+    /** Maximum number of retries of single call after transient failure. */
+    public static final int MAX_RETRIES = Integer.getInteger(CircuitBreaker.class.getName() + ".maxRetries", 2);
+
+    /** Delay (in milliseconds) before first retry; doubled for each next one. */
+    public static final long RETRY_DELAY = Long.getLong(CircuitBreaker.class.getName() + ".retryDelay", 500L);
+
+    /** Maximum delay (in milliseconds) before retry. */
+    private static final long MAX_RETRY_DELAY = 10 * 1000L;
+
+    /** State of the circuit. */
+    public enum State {
+        /** Calls are made normally. */
+        CLOSED,
+        /** Calls fail immediately. */
+        OPEN,
+        /** Single probe call is made, others fail immediately. */
+        HALF_OPEN
+    }
+
+    private State state = State.CLOSED;
+
+    /** Number of transient failures since last success. */
+    private int consecutiveFailures;
+
+    /** Time circuit was opened. */
+    private long openedAt;
+
+    /** Number of retried calls. */
+    private final AtomicLong retries = new AtomicLong();
+
+    /** Number of calls rejected because circuit was open. */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** Number of transient failures. */
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Checks whether call to JIRA may be made now.
+     * 
+     * @return {@code false} if call should fail immediately.
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if (System.currentTimeMillis() - openedAt >= OPEN_TIME) {
+                state = State.HALF_OPEN;
+                return true;
+            }
+            break;
+        case HALF_OPEN:
+            break;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records call which reached JIRA.
+     */
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records transient failure of a call.
+     */
+    public synchronized void onFailure() {
+        failures.incrementAndGet();
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Records call that ended without result, e.g. with {@link Error}. If it
+     * was the probe call, circuit is opened again without waiting, so the
+     * next call becomes the probe.
+     */
+    public synchronized void onAbort() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    /**
+     * Records retry of a call.
+     */
+    public void onRetry() {
+        retries.incrementAndGet();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Returns delay before retry: exponentially growing limit, with random
+     * part so retries of many builds are not made at the same moment.
+     * 
+     * @param attempt
+     *            Number of failed attempts so far (starting with {@code 0}).
+     * @return Delay in milliseconds.
+     */
+    public static long backoff(int attempt) {
+        long limit = Math.min(MAX_RETRY_DELAY, RETRY_DELAY << Math.min(attempt, 16));
+        return limit / 2 + (long) (Math.random() * (limit / 2));
+    }
+
+    /**
+     * Checks whether failure is transient, i.e. JIRA could not be reached or
+     * did not respond properly.
+     * 
+     * @param e
+     *            Failure of call to JIRA.
+     * @return {@code true} for transient failures.
+     */
+    public static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof JiraRestException) {
+                return ((JiraRestException) t).isServerError();
+            }
+            if (t instanceof AxisFault) {
+                AxisFault fault = (AxisFault) t;
+                // Axis zglasza bledy HTTP jako "(kod)opis"
+                if (fault.getFaultCode() != null && "HTTP".equals(fault.getFaultCode().getLocalPart())
+                        && fault.getFaultString() != null && fault.getFaultString().startsWith("(5")) {
+                    return true;
+                }
+                // AxisFault jest IOException, ale bledy JIRA nie sa przejsciowe; sprawdzamy przyczyne
+                continue;
+            }
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether failure happened before request was sent to JIRA, so
+     * even call that is not idempotent may be safely repeated.
+     * 
+     * @param e
+     *            Failure of call to JIRA.
+     * @return {@code true} if connection could not be established.
+     */
+    public static boolean isConnectFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof ConnectException || t instanceof UnknownHostException
+                    || t instanceof NoRouteToHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.io.IOException;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteIssue;
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Remote operations on JIRA used by the plugin. Implemented on top of JIRA
+ * SOAP service ({@link SoapJiraClient}) and JIRA REST API
+ * ({@link RestJiraClient}); which one is used is chosen per
+ * {@link TrackerInstance}. Implementations must be thread safe.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public interface JiraClient {
+
+    /**
+     * Opens JIRA session.
+     * 
+     * @param user
+     *            Name of JIRA user.
+     * @param pass
+     *            Password of the user.
+     * @return Token identifying opened session.
+     * @throws IOException
+     */
+    String login(String user, String pass) throws IOException;
+
+    /**
+     * Returns all versions of JIRA project.
+     * 
+     * @param token
+     *            Session token returned by {@link JiraClient#login}.
+     * @param projectKey
+     *            Key of JIRA project.
+     * @return Versions of the project.
+     * @throws IOException
+     */
+    RemoteVersion[] getVersions(String token, String projectKey) throws IOException;
+
+    /**
+     * Passes versions of JIRA project that are neither released nor archived
+     * to {@code visitor}, as they are read from JIRA response. Other versions
+     * are skipped without creating objects for them.
+     * 
+     * @param token
+     *            Session token returned by {@link JiraClient#login}.
+     * @param projectKey
+     *            Key of JIRA project.
+     * @param visitor
+     *            Receiver of versions; may stop reading at any version.
+     * @throws IOException
+     */
+    void visitUnreleasedVersions(String token, String projectKey, VersionVisitor visitor) throws IOException;
+
+    /**
+     * Marks {@code version} as released, using its release date.
+     * 
+     * @param token
+     *            Session token returned by {@link JiraClient#login}.
+     * @param projectKey
+     *            Key of JIRA project.
+     * @param version
+     *            Version to release.
+     * @throws IOException
+     */
+    void releaseVersion(String token, String projectKey, RemoteVersion version) throws IOException;
+
+    /**
+     * Marks released {@code version} as archived, so it's hidden in JIRA.
+     * 
+     * @param token
+     *            Session token returned by {@link JiraClient#login}.
+     * @param projectKey
+     *            Key of JIRA project.
+     * @param version
+     *            Version to archive.
+     * @throws IOException
+     */
+    void archiveVersion(String token, String projectKey, RemoteVersion version) throws IOException;
+
+    /**
+     * Creates new version in JIRA project.
+     * 
+     * @param token
+     *            Session token returned by {@link JiraClient#login}.
+     * @param projectKey
+     *            Key of JIRA project.
+     * @param version
+     *            Version to create; only name is used.
+     * @return Version created by JIRA.
+     * @throws IOException
+     */
+    RemoteVersion addVersion(String token, String projectKey, RemoteVersion version) throws IOException;
+
+    /**
+     * Returns single page of issues of JIRA project fixed in version, ordered
+     * by key. Next page is read by passing key of the last returned issue as
+     * {@code afterKey}.
+     * 
+     * @param token
+     *            Session token returned by {@link JiraClient#login}.
+     * @param projectKey
+     *            Key of JIRA project.
+     * @param versionName
+     *            Name of fix version.
+     * @param afterKey
+     *            Key of the last issue of previous page; {@code null} for the
+     *            first page.
+     * @param maxResults
+     *            Maximum number of returned issues.
+     * @return Issues with (at least) key and summary; fewer than
+     *         {@code maxResults} on the last page.
+     * @throws IOException
+     */
+    RemoteIssue[] getFixedIssues(String token, String projectKey, String versionName, String afterKey,
+            int maxResults) throws IOException;
+
+    /**
+     * Closes JIRA session.
+     * 
+     * @param token
+     *            Session token returned by {@link JiraClient#login}.
+     * @return {@code true} if session was closed.
+     * @throws IOException
+     */
+    boolean logout(String token) throws IOException;
+}
@@ -0,0 +1,539 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.rpc.ServiceException;
+
+import org.apache.axis.EngineConfiguration;
+import org.apache.axis.client.Stub;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.JiraSoapService;
+import pl.kbaranski.hudson.jiraVersionRelease.soap.JiraSoapServiceServiceLocator;
+
+/**
+ * Long-lived JIRA clients of all configured {@link TrackerInstance}s. Keeps
+ * one {@link JiraSessionManager} per instance (looked up by instance name) and
+ * caches SOAP service stubs of other JIRA URLs (e.g. validated on
+ * configuration page), so Axis service and its type mapping are built only
+ * once. Generated Axis stubs create new {@code Call} object for
+ * each operation, so single stub may be safely used by many builds at once.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class JiraClientRegistry {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(JiraClientRegistry.class.getName());
+
+    /**
+     * Maximum number of stubs kept for URLs that do not belong to any
+     * configured instance (e.g. URLs being validated on configuration page).
+     */
+    private static final int MAX_STUBS = 16;
+
+    /**
+     * Session managers by instance name. Never modified; whole map is replaced
+     * when configuration changes.
+     */
+    private volatile Map<String, JiraSessionManager> managers = Collections.emptyMap();
+
+    /**
+     * Time (in milliseconds) Hudson / Jenkins shutdown waits for queued
+     * background operations.
+     */
+    private static final long SHUTDOWN_TIMEOUT = 30 * 1000L;
+
+    /** Background dispatchers by instance name, created on first use. */
+    private final ConcurrentMap<String, ReleaseDispatcher> dispatchers =
+            new ConcurrentHashMap<String, ReleaseDispatcher>();
+
+    /** Release batchers by instance name and project key. */
+    private final ConcurrentMap<String, ConcurrentMap<String, ReleaseBatcher>> batchers =
+            new ConcurrentHashMap<String, ConcurrentMap<String, ReleaseBatcher>>();
+
+    /** Metrics of JIRA operations by instance name, kept across reconfiguration. */
+    private final ConcurrentMap<String, JiraMetrics> metrics = new ConcurrentHashMap<String, JiraMetrics>();
+
+    /** Journal of JIRA operations, {@code null} if operations are not recorded. */
+    private volatile ReleaseJournal journal;
+
+    /** Whether {@link JiraClientRegistry#journal} was opened or set. */
+    private volatile boolean journalOpened;
+
+    /** File of {@link JiraClientRegistry#journal}, {@code null} if operations are not recorded. */
+    private volatile File journalFile;
+
+    /** Identifiers of journal operations queued for replay and not finished yet. */
+    private final Set<Long> replaying = Collections.synchronizedSet(new HashSet<Long>());
+
+    /**
+     * Number of JIRA projects of builds released at once (by all builds
+     * together).
+     */
+    public static final int FAN_OUT = Integer.getInteger(JiraClientRegistry.class.getName() + ".fanOut", 8);
+
+    /**
+     * Threads releasing versions of builds with many JIRA projects, created on
+     * first use.
+     */
+    private ThreadPoolExecutor fanOut;
+
+    /** Cached checks of configuration page. */
+    private final ValidationCache validations = new ValidationCache(this);
+
+    /** SOAP service stubs by JIRA URL, least recently used dropped first. */
+    private final Map<String, JiraSoapService> stubs = new LinkedHashMap<String, JiraSoapService>(MAX_STUBS, 0.75f,
+            true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JiraSoapService> eldest) {
+            return size() > MAX_STUBS;
+        }
+    };
+
+    /**
+     * Replaces set of JIRA instances known by this registry. Managers of
+     * instances which connection data did not change are kept (together with
+     * their sessions), others are closed after new set becomes visible.
+     * 
+     * @param instances
+     *            Currently configured JIRA instances.
+     */
+    public synchronized void update(Iterable<TrackerInstance> instances) {
+        Map<String, JiraSessionManager> old = managers;
+        Map<String, JiraSessionManager> updated = new HashMap<String, JiraSessionManager>();
+        for (TrackerInstance instance : instances) {
+            JiraSessionManager manager = old.get(instance.getName());
+            if (manager == null || !manager.getTrackerInstance().hasSameConnection(instance)) {
+                manager = new JiraSessionManager(this, instance);
+            }
+            manager.getRateLimiter().setRate(instance.getRequestsPerSecond(), instance.getMaxWait());
+            updated.put(instance.getName(), manager);
+        }
+        managers = Collections.unmodifiableMap(updated);
+        for (Map.Entry<String, JiraSessionManager> entry : old.entrySet()) {
+            if (updated.get(entry.getKey()) != entry.getValue()) {
+                entry.getValue().close();
+            }
+        }
+        for (String name : dispatchers.keySet()) {
+            if (!updated.containsKey(name)) {
+                dispatchers.remove(name).shutdown();
+            }
+        }
+        batchers.keySet().retainAll(updated.keySet());
+        for (String name : metrics.keySet()) {
+            if (!updated.containsKey(name)) {
+                metrics.remove(name).close();
+            }
+        }
+    }
+
+    /**
+     * Returns session manager of JIRA instance with specified name.
+     * 
+     * @param name
+     *            Name of JIRA instance.
+     * @return Session manager or {@code null} if there is no such instance.
+     */
+    public JiraSessionManager get(String name) {
+        return name == null ? null : managers.get(name);
+    }
+
+    /**
+     * Returns JIRA instance with specified name.
+     * 
+     * @param name
+     *            Name of JIRA instance.
+     * @return JIRA instance or {@code null} if there is no such instance.
+     */
+    public TrackerInstance getInstance(String name) {
+        JiraSessionManager manager = get(name);
+        return manager == null ? null : manager.getTrackerInstance();
+    }
+
+    /**
+     * Returns background dispatcher of JIRA instance with specified name,
+     * creating it on first use.
+     * 
+     * @param name
+     *            Name of JIRA instance.
+     * @return Dispatcher or {@code null} if there is no such instance.
+     */
+    public synchronized ReleaseDispatcher getDispatcher(String name) {
+        if (get(name) == null) {
+            return null;
+        }
+        ReleaseDispatcher dispatcher = dispatchers.get(name);
+        if (dispatcher == null) {
+            dispatcher = new ReleaseDispatcher(name);
+            dispatchers.put(name, dispatcher);
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Returns batcher of release requests of JIRA project, creating it on
+     * first use.
+     * 
+     * @param name
+     *            Name of JIRA instance.
+     * @param projectKey
+     *            Key of JIRA project.
+     * @return Batcher of the project.
+     */
+    public ReleaseBatcher getBatcher(String name, String projectKey) {
+        ConcurrentMap<String, ReleaseBatcher> projects = batchers.get(name);
+        if (projects == null) {
+            ConcurrentMap<String, ReleaseBatcher> created = new ConcurrentHashMap<String, ReleaseBatcher>();
+            projects = batchers.putIfAbsent(name, created);
+            if (projects == null) {
+                projects = created;
+            }
+        }
+        ReleaseBatcher batcher = projects.get(projectKey);
+        if (batcher == null) {
+            ReleaseBatcher created = new ReleaseBatcher(this, name, projectKey);
+            batcher = projects.putIfAbsent(projectKey, created);
+            if (batcher == null) {
+                batcher = created;
+            }
+        }
+        return batcher;
+    }
+
+    /**
+     * Returns metrics of JIRA operations called for instance with specified
+     * name, creating them on first use.
+     * 
+     * @param name
+     *            Name of JIRA instance.
+     * @return Metrics of the instance.
+     */
+    public JiraMetrics getMetrics(String name) {
+        JiraMetrics instanceMetrics = metrics.get(name);
+        if (instanceMetrics == null) {
+            JiraMetrics created = new JiraMetrics(name);
+            instanceMetrics = metrics.putIfAbsent(name, created);
+            if (instanceMetrics == null) {
+                instanceMetrics = created;
+            }
+        }
+        return instanceMetrics;
+    }
+
+    /**
+     * Returns metrics of all JIRA instances that were used.
+     * 
+     * @return Metrics sorted by instance name.
+     */
+    public List<JiraMetrics> getAllMetrics() {
+        return new ArrayList<JiraMetrics>(new TreeMap<String, JiraMetrics>(metrics).values());
+    }
+
+    /**
+     * Returns background dispatcher of JIRA instance with specified name if
+     * it was already used.
+     * 
+     * @param name
+     *            Name of JIRA instance.
+     * @return Dispatcher or {@code null} if it was not created yet.
+     */
+    public ReleaseDispatcher findDispatcher(String name) {
+        return name == null ? null : dispatchers.get(name);
+    }
+
+    /**
+     * Sets file of journal of JIRA operations. Journal is opened on first
+     * use.
+     * 
+     * @param journalFile
+     *            Journal file; {@code null} if operations should not be
+     *            recorded.
+     */
+    public void setJournalFile(File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Returns journal of JIRA operations, opening
+     * {@link JiraClientRegistry#journalFile} on first use.
+     * 
+     * @return Journal or {@code null} if operations are not recorded.
+     */
+    public ReleaseJournal getJournal() {
+        if (!journalOpened) {
+            synchronized (this) {
+                if (!journalOpened) {
+                    File file = journalFile;
+                    if (file != null) {
+                        try {
+                            journal = new ReleaseJournal(file);
+                        } catch (IOException e) {
+                            LOG.log(Level.SEVERE, "Failed to open journal of JIRA operations", e);
+                        }
+                    }
+                    journalOpened = true;
+                }
+            }
+        }
+        return journal;
+    }
+
+    public synchronized void setJournal(ReleaseJournal journal) {
+        this.journal = journal;
+        journalOpened = true;
+    }
+
+    /**
+     * Queues replay of operations that are recorded in the journal but were
+     * not done. Operations of each JIRA instance are replayed by its
+     * background dispatcher, before operations of new builds.
+     */
+    public void replayJournal() {
+        replayJournal(0);
+    }
+
+    /**
+     * Queues replay of operations that are recorded in the journal at least
+     * {@code minAge} milliseconds ago but were not done (e.g. JIRA was not
+     * available). Younger operations may still be in progress. Operations
+     * already queued for replay are skipped; operations older than
+     * {@link ReleaseJournal#MAX_AGE} are dropped.
+     * 
+     * @param minAge
+     *            Minimum age (in milliseconds) of replayed operation.
+     */
+    public void replayJournal(long minAge) {
+        ReleaseJournal journal = getJournal();
+        if (journal == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Map<String, List<ReleaseJournal.Entry>> byInstance = new HashMap<String, List<ReleaseJournal.Entry>>();
+        for (ReleaseJournal.Entry entry : journal.getPending()) {
+            if (now - entry.getTime() > ReleaseJournal.MAX_AGE) {
+                LOG.log(Level.WARNING, "Dropping JIRA operation " + entry.getOperation() + " "
+                        + entry.getVersionName() + " recorded at " + new java.util.Date(entry.getTime()));
+                journal.done(entry.getId());
+                continue;
+            }
+            if (now - entry.getTime() < minAge || !replaying.add(entry.getId())) {
+                continue;
+            }
+            List<ReleaseJournal.Entry> entries = byInstance.get(entry.getInstanceName());
+            if (entries == null) {
+                entries = new ArrayList<ReleaseJournal.Entry>();
+                byInstance.put(entry.getInstanceName(), entries);
+            }
+            entries.add(entry);
+        }
+        for (Map.Entry<String, List<ReleaseJournal.Entry>> entry : byInstance.entrySet()) {
+            ReleaseDispatcher dispatcher = getDispatcher(entry.getKey());
+            if (dispatcher == null) {
+                LOG.log(Level.WARNING, entry.getValue().size() + " JIRA operations of unknown instance "
+                        + entry.getKey() + " will not be replayed");
+                replayed(entry.getValue());
+                continue;
+            }
+            if (!dispatcher.submit(new JournalReplay(this, journal, entry.getKey(), entry.getValue()))) {
+                // Kolejka pelna, sprobujemy przy nastepnym uruchomieniu
+                replayed(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Marks replay of {@code entries} as finished, so those that are still
+     * pending may be replayed again.
+     * 
+     * @param entries
+     *            Replayed operations.
+     */
+    void replayed(List<ReleaseJournal.Entry> entries) {
+        for (ReleaseJournal.Entry entry : entries) {
+            replaying.remove(entry.getId());
+        }
+    }
+
+    /**
+     * Returns threads releasing versions in JIRA projects of single build in
+     * parallel. Sessions and connections of JIRA instance are shared, as with
+     * separate builds.
+     * 
+     * @return Executor with at most {@link JiraClientRegistry#FAN_OUT}
+     *         threads.
+     */
+    public synchronized ExecutorService getFanOut() {
+        if (fanOut == null) {
+            fanOut = new ThreadPoolExecutor(FAN_OUT, FAN_OUT, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new JiraThreadFactory("JIRA fan-out"));
+            fanOut.allowCoreThreadTimeOut(true);
+        }
+        return fanOut;
+    }
+
+    public ValidationCache getValidations() {
+        return validations;
+    }
+
+    /**
+     * Returns SOAP service stub for JIRA available under {@code url}, creating
+     * it if it's not cached yet. Calls of the stub time out after
+     * {@link ValidationCache#TIMEOUT}.
+     * 
+     * @param url
+     *            URL of JIRA SOAP service.
+     * @return JIRA SOAP service.
+     * @throws JiraException
+     */
+    public JiraSoapService getSoapService(URL url) throws JiraException {
+        String key = url.toExternalForm();
+        synchronized (stubs) {
+            JiraSoapService soapService = stubs.get(key);
+            if (soapService == null) {
+                soapService = createSoapService(url, null);
+                ((Stub) soapService).setTimeout(ValidationCache.TIMEOUT * 1000);
+                stubs.put(key, soapService);
+            }
+            return soapService;
+        }
+    }
+
+    /**
+     * Creates client of JIRA instance. Depending on configuration of the
+     * instance it calls JIRA SOAP service or REST API.
+     * 
+     * @param instance
+     *            JIRA instance.
+     * @param connectionManager
+     *            Pool of HTTP connections to the instance.
+     * @return JIRA client.
+     * @throws JiraException
+     */
+    protected JiraClient createClient(TrackerInstance instance, PooledConnectionManager connectionManager)
+            throws JiraException {
+        if (instance.isUseRest()) {
+            return new RestJiraClient(instance.getUrl(), connectionManager);
+        }
+        return new SoapJiraClient(createSoapService(instance.getUrl(),
+                PooledHttpSender.createConfiguration(connectionManager)), instance.getUrl(), connectionManager);
+    }
+
+    /**
+     * Creates new SOAP service stub for JIRA available under {@code url}.
+     * 
+     * @param url
+     *            URL of JIRA SOAP service.
+     * @param config
+     *            Axis configuration (e.g. with pooled HTTP transport) or
+     *            {@code null} for default one.
+     * @return JIRA SOAP service.
+     * @throws JiraException
+     */
+    JiraSoapService createSoapService(URL url, EngineConfiguration config) throws JiraException {
+        try {
+            JiraSoapServiceServiceLocator locator = config == null ? new JiraSoapServiceServiceLocator()
+                    : new JiraSoapServiceServiceLocator(config);
+            return locator.getJirasoapserviceV2(url);
+        } catch (ServiceException e) {
+            LOG.log(Level.SEVERE, e.getClass().getName() + " while getting JIRA service.", e);
+            throw new JiraException(e);
+        }
+    }
+
+    /**
+     * Closes HTTP connections of all JIRA instances that were idle for longer
+     * than configured idle timeout.
+     */
+    public void evictIdleConnections() {
+        for (JiraSessionManager manager : managers.values()) {
+            PooledConnectionManager connectionManager = manager.findConnectionManager();
+            if (connectionManager != null) {
+                connectionManager.evictIdle();
+            }
+        }
+    }
+
+    /**
+     * Prepares all JIRA instances for the first build, one after another.
+     * Called in background after Hudson / Jenkins has started.
+     * 
+     * @see JiraSessionManager#warmUp()
+     */
+    public void warmUp() {
+        for (JiraSessionManager manager : managers.values()) {
+            manager.warmUp();
+        }
+    }
+
+    /**
+     * Runs operations queued in background dispatchers and closes sessions of
+     * all JIRA instances. Called when Hudson / Jenkins is shutting down.
+     */
+    public synchronized void close() {
+        for (ReleaseDispatcher dispatcher : dispatchers.values()) {
+            dispatcher.shutdownAndWait(SHUTDOWN_TIMEOUT);
+        }
+        dispatchers.clear();
+        for (JiraSessionManager manager : managers.values()) {
+            manager.close();
+        }
+        managers = Collections.emptyMap();
+        for (JiraMetrics instanceMetrics : metrics.values()) {
+            instanceMetrics.close();
+        }
+        metrics.clear();
+        validations.close();
+        if (fanOut != null) {
+            fanOut.shutdownNow();
+            fanOut = null;
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
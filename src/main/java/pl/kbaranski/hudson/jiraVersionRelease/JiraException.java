@@ -7,6 +7,10 @@ public class JiraException extends Exception {
         super();
     }
 
+    public JiraException(String message) {
+        super(message);
+    }
+
     public JiraException(Throwable cause) {
         super(cause);
     }
@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of JIRA operations called for single {@link TrackerInstance}, kept
+ * separately for each project. Metrics of each operation are published over
+ * JMX as {@code pl.kbaranski.hudson.jiraVersionRelease:type=JiraOperation,
+ * instance=...,project=...,operation=...}. Version indexes of the projects
+ * are published as {@code pl.kbaranski.hudson.jiraVersionRelease:
+ * type=VersionIndex,instance=...,project=...}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class JiraMetrics {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(JiraMetrics.class.getName());
+
+    /** JMX domain of published metrics. */
+    private static final String DOMAIN = "pl.kbaranski.hudson.jiraVersionRelease";
+
+    /** Project key under which operations of whole session are kept. */
+    public static final String SESSION = "";
+
+    /** Name of JIRA instance. */
+    private final String instanceName;
+
+    /** Metrics by project key, indexed by {@link JiraOperation#ordinal()}. */
+    private final ConcurrentMap<String, OperationMetrics[]> projects =
+            new ConcurrentHashMap<String, OperationMetrics[]>();
+
+    /** Published version indexes by project key. */
+    private final ConcurrentMap<String, VersionIndex> indexes = new ConcurrentHashMap<String, VersionIndex>();
+
+    public JiraMetrics(String instanceName) {
+        this.instanceName = instanceName;
+    }
+
+    public String getInstanceName() {
+        return instanceName;
+    }
+
+    /**
+     * Returns metrics of {@code operation} called for project, creating (and
+     * publishing) metrics of the project on first use.
+     * 
+     * @param projectKey
+     *            Key of JIRA project or {@link JiraMetrics#SESSION}.
+     * @param operation
+     *            JIRA operation.
+     * @return Metrics of the operation.
+     */
+    public OperationMetrics get(String projectKey, JiraOperation operation) {
+        OperationMetrics[] metrics = projects.get(projectKey);
+        if (metrics == null) {
+            OperationMetrics[] created = new OperationMetrics[JiraOperation.values().length];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new OperationMetrics();
+            }
+            metrics = projects.putIfAbsent(projectKey, created);
+            if (metrics == null) {
+                metrics = created;
+                register(projectKey, created);
+            }
+        }
+        return metrics[operation.ordinal()];
+    }
+
+    /**
+     * Returns metrics of all projects, sorted by project key.
+     * 
+     * @return Metrics by project key, indexed by
+     *         {@link JiraOperation#ordinal()}.
+     */
+    public SortedMap<String, OperationMetrics[]> getProjects() {
+        return new TreeMap<String, OperationMetrics[]>(projects);
+    }
+
+    /**
+     * Publishes counters of version index of the project. Index published
+     * earlier for the project (by client replaced after change of
+     * configuration) is replaced.
+     * 
+     * @param projectKey
+     *            Key of JIRA project.
+     * @param index
+     *            Version index of the project.
+     */
+    public synchronized void register(String projectKey, VersionIndex index) {
+        if (indexes.put(projectKey, index) == index) {
+            return;
+        }
+        try {
+            ObjectName name = getIndexName(projectKey);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(index, name);
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "Failed to register JIRA version index in JMX", e);
+        }
+    }
+
+    /**
+     * Removes metrics of this instance from JMX. Called when instance is
+     * removed from configuration or Hudson / Jenkins is shutting down.
+     */
+    public void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Map.Entry<String, OperationMetrics[]> entry : projects.entrySet()) {
+            for (JiraOperation operation : JiraOperation.values()) {
+                try {
+                    ObjectName name = getObjectName(entry.getKey(), operation);
+                    if (server.isRegistered(name)) {
+                        server.unregisterMBean(name);
+                    }
+                } catch (JMException e) {
+                    LOG.log(Level.FINE, "Failed to unregister JIRA metrics", e);
+                }
+            }
+        }
+        for (String projectKey : indexes.keySet()) {
+            try {
+                ObjectName name = getIndexName(projectKey);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                LOG.log(Level.FINE, "Failed to unregister JIRA version index", e);
+            }
+        }
+    }
+
+    private void register(String projectKey, OperationMetrics[] metrics) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (JiraOperation operation : JiraOperation.values()) {
+            try {
+                ObjectName name = getObjectName(projectKey, operation);
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(metrics[operation.ordinal()], name);
+                }
+            } catch (JMException e) {
+                LOG.log(Level.WARNING, "Failed to register JIRA metrics in JMX", e);
+            }
+        }
+    }
+
+    private ObjectName getObjectName(String projectKey, JiraOperation operation) throws JMException {
+        return new ObjectName(DOMAIN + ":type=JiraOperation,instance=" + ObjectName.quote(instanceName)
+                + ",project=" + ObjectName.quote(SESSION.equals(projectKey) ? "(session)" : projectKey)
+                + ",operation=" + operation.getDisplayName());
+    }
+
+    private ObjectName getIndexName(String projectKey) throws JMException {
+        return new ObjectName(DOMAIN + ":type=VersionIndex,instance=" + ObjectName.quote(instanceName)
+                + ",project=" + ObjectName.quote(projectKey));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import hudson.Extension;
+import hudson.model.Hudson;
+import hudson.model.ManagementLink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Page on "Manage Hudson / Jenkins" showing metrics of JIRA operations of all
+ * JIRA instances.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+@Extension
+public class JiraMetricsLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "graph.gif";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "jiraVersionRelease-metrics";
+    }
+
+    public String getDisplayName() {
+        return Messages.metricsDisplayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.metricsDescription();
+    }
+
+    /**
+     * Returns metrics of all JIRA instances used so far.
+     * 
+     * @return Metrics sorted by instance name.
+     */
+    public List<JiraMetrics> getMetrics() {
+        JiraVersionReleasePublisher.DescriptorImpl descriptor = Hudson.getInstance().getDescriptorByType(
+                JiraVersionReleasePublisher.DescriptorImpl.class);
+        if (descriptor == null) {
+            return Collections.emptyList();
+        }
+        return descriptor.getClients().getAllMetrics();
+    }
+
+    /**
+     * Returns rows of metrics table of JIRA instance: operations that were
+     * called at least once, by project.
+     * 
+     * @param metrics
+     *            Metrics of JIRA instance.
+     * @return Table rows.
+     */
+    public List<Row> getRows(JiraMetrics metrics) {
+        List<Row> rows = new ArrayList<Row>();
+        for (Map.Entry<String, OperationMetrics[]> project : metrics.getProjects().entrySet()) {
+            for (JiraOperation operation : JiraOperation.values()) {
+                OperationMetrics operationMetrics = project.getValue()[operation.ordinal()];
+                if (operationMetrics.getCalls() > 0) {
+                    rows.add(new Row(project.getKey(), operation, operationMetrics));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Formats time in milliseconds for the page.
+     * 
+     * @param millis
+     *            Time in milliseconds.
+     * @return Time rounded to 0.1 ms.
+     */
+    public String format(double millis) {
+        return String.format("%.1f", millis);
+    }
+
+    /**
+     * Metrics of single operation called for single project.
+     */
+    public static class Row {
+        private final String projectKey;
+        private final JiraOperation operation;
+        private final OperationMetrics metrics;
+
+        Row(String projectKey, JiraOperation operation, OperationMetrics metrics) {
+            this.projectKey = projectKey;
+            this.operation = operation;
+            this.metrics = metrics;
+        }
+
+        public String getProject() {
+            return JiraMetrics.SESSION.equals(projectKey) ? "(session)" : projectKey;
+        }
+
+        public String getOperation() {
+            return operation.getDisplayName();
+        }
+
+        public OperationMetrics getMetrics() {
+            return metrics;
+        }
+    }
+}
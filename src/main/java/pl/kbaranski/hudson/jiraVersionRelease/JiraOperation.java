@@ -0,0 +1,51 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+/**
+ * Remote JIRA operations measured by {@link JiraMetrics}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public enum JiraOperation {
+    LOGIN("login"), GET_VERSIONS("getVersions"), RELEASE_VERSION("releaseVersion"), ADD_VERSION("addVersion"),
+    LOGOUT("logout"), ARCHIVE_VERSION("archiveVersion"), SEARCH_ISSUES("getIssuesFromJqlSearch"),
+    INITIALIZE("initialize"), THROTTLE("throttle");
+
+    /**
+     * Name of the operation, as in JIRA SOAP service. {@code initialize} is
+     * creation of JIRA client (loading of SOAP stack) done by the plugin,
+     * {@code throttle} is wait for turn when rate of calls is limited.
+     */
+    private final String displayName;
+
+    private JiraOperation(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.io.IOException;
+
+/**
+ * JIRA REST API responded with HTTP error status.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class JiraRestException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /** HTTP status code of the response. */
+    private final int status;
+
+    public JiraRestException(int status, String message) {
+        super("(" + status + ")" + message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Checks whether JIRA rejected credentials or session token.
+     * 
+     * @return {@code true} for {@code 401 Unauthorized} response.
+     */
+    public boolean isAuthenticationFault() {
+        return status == 401;
+    }
+
+    /**
+     * Checks whether error is caused by JIRA or proxy in front of it, so the
+     * same request may succeed later.
+     * 
+     * @return {@code true} for {@code 5xx} responses.
+     */
+    public boolean isServerError() {
+        return status >= 500;
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.axis.AxisFault;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteAuthenticationException;
+
+/**
+ * Keeps JIRA SOAP session of single {@link TrackerInstance} alive between
+ * builds. Instead of logging in and out on every build, token is obtained
+ * once, shared by all jobs using the same JIRA instance and replaced only when
+ * JIRA rejects it or when it was not used for longer than idle timeout.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class JiraSessionManager {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(JiraSessionManager.class.getName());
+
+    /**
+     * Time (in milliseconds) after which unused token is considered expired
+     * and new login is performed. Should be shorter than session timeout
+     * configured in JIRA.
+     */
+    public static final long IDLE_TIMEOUT = Long.getLong(JiraSessionManager.class.getName() + ".idleTimeout",
+            10 * 60 * 1000L);
+
+    /** Registry that owns this manager and caches SOAP service stubs. */
+    private final JiraClientRegistry registry;
+
+    /** JIRA instance which sessions are managed by this object. */
+    private final TrackerInstance trackerInstance;
+
+    /** Pool of HTTP connections to JIRA instance, created on first use. */
+    private PooledConnectionManager connectionManager;
+
+    /** Object used to call JIRA (through SOAP service or REST API). */
+    private JiraClient client;
+
+    /** Token of currently opened session or {@code null} if not logged in. */
+    private String soapToken;
+
+    /** Time of last use of {@link JiraSessionManager#soapToken}. */
+    private long lastUsed;
+
+    /** Circuit breaker shared by all calls to JIRA instance. */
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /** Limit of rate of calls shared by all jobs using JIRA instance. */
+    private final RateLimiter rateLimiter = new RateLimiter();
+
+    /** Identical calls made at the same time by jobs using JIRA instance. */
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /** Indexes of not released versions by project key. */
+    private final ConcurrentMap<String, VersionIndex> versionIndexes = new ConcurrentHashMap<String, VersionIndex>();
+
+    /** Set after {@link JiraSessionManager#close()}; no more logins allowed. */
+    private boolean closed;
+
+    public JiraSessionManager(JiraClientRegistry registry, TrackerInstance trackerInstance) {
+        this.registry = registry;
+        this.trackerInstance = trackerInstance;
+    }
+
+    public TrackerInstance getTrackerInstance() {
+        return trackerInstance;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * Waits until rate limit of JIRA instance lets next call through. Time
+     * spent waiting is recorded as {@link JiraOperation#THROTTLE} of the
+     * project; calls that waited too long are recorded as errors.
+     * 
+     * @param projectKey
+     *            Key of JIRA project the call is made for; calls of different
+     *            projects are let through in turns.
+     * @throws JiraException
+     *             If call was not let through within maximum wait.
+     */
+    public void throttle(String projectKey) throws JiraException {
+        if (!rateLimiter.isLimited()) {
+            return;
+        }
+        String key = projectKey == null ? JiraMetrics.SESSION : projectKey;
+        OperationMetrics throttle = registry.getMetrics(trackerInstance.getName()).get(key, JiraOperation.THROTTLE);
+        long start = throttle.start();
+        boolean acquired = false;
+        try {
+            acquired = rateLimiter.acquire(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            throttle.stop(start, acquired);
+        }
+        if (!acquired) {
+            throw new JiraException("Too many calls to JIRA instance " + trackerInstance.getName()
+                    + ", call was not made");
+        }
+    }
+
+    /**
+     * Returns pool of HTTP connections to JIRA instance, creating it on first
+     * use.
+     * 
+     * @return Connection pool.
+     */
+    public synchronized PooledConnectionManager getConnectionManager() {
+        if (connectionManager == null) {
+            connectionManager = new PooledConnectionManager(trackerInstance);
+        }
+        return connectionManager;
+    }
+
+    /**
+     * Returns pool of HTTP connections to JIRA instance if it was already
+     * created.
+     * 
+     * @return Connection pool or {@code null} if JIRA was not called yet.
+     */
+    public synchronized PooledConnectionManager findConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * Returns client of JIRA instance, creating it on first use. Depending on
+     * configuration of the instance it calls JIRA SOAP service or REST API,
+     * through pool of keep-alive connections of this instance. Calls are
+     * recorded in metrics of the instance. Creation of the client (which
+     * loads SOAP stack on first use) is recorded as
+     * {@link JiraOperation#INITIALIZE}.
+     * 
+     * @return JIRA client.
+     * @throws JiraException
+     */
+    public synchronized JiraClient getClient() throws JiraException {
+        if (client == null) {
+            JiraMetrics metrics = registry.getMetrics(trackerInstance.getName());
+            OperationMetrics initialize = metrics.get(JiraMetrics.SESSION, JiraOperation.INITIALIZE);
+            long start = initialize.start();
+            boolean success = false;
+            try {
+                client = new MeteredJiraClient(registry.createClient(trackerInstance, getConnectionManager()),
+                        metrics);
+                success = true;
+            } finally {
+                initialize.stop(start, success);
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Prepares manager for the first build: creates JIRA client (loading SOAP
+     * stub classes), resolves host name of JIRA and opens session. Failures
+     * are only logged; the build will try again.
+     */
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+        try {
+            InetAddress.getAllByName(trackerInstance.getUrl().getHost());
+            acquire();
+            LOG.log(Level.INFO, "JIRA instance " + trackerInstance.getName() + " warmed up in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } catch (UnknownHostException e) {
+            LOG.log(Level.WARNING, "Failed to resolve host of JIRA instance " + trackerInstance.getName(), e);
+        } catch (JiraException e) {
+            LOG.log(Level.WARNING, "Failed to warm up JIRA instance " + trackerInstance.getName(), e);
+        }
+    }
+
+    /**
+     * Returns index of not released versions of JIRA project, creating empty
+     * one on first use.
+     * 
+     * @param projectKey
+     *            Key of JIRA project.
+     * @return Version index of the project.
+     */
+    public VersionIndex getVersionIndex(String projectKey) {
+        VersionIndex index = versionIndexes.get(projectKey);
+        if (index == null) {
+            VersionIndex created = new VersionIndex();
+            index = versionIndexes.putIfAbsent(projectKey, created);
+            if (index == null) {
+                index = created;
+                registry.getMetrics(trackerInstance.getName()).register(projectKey, created);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns version indexes of projects used so far.
+     * 
+     * @return Version indexes by project key.
+     */
+    public Map<String, VersionIndex> getVersionIndexes() {
+        return new TreeMap<String, VersionIndex>(versionIndexes);
+    }
+
+    /**
+     * Checks whether {@link JiraSessionManager#acquire()} can return opened
+     * session without logging in.
+     * 
+     * @return {@code true} if there is a session that was not idle for too
+     *         long.
+     */
+    public synchronized boolean hasSession() {
+        return soapToken != null && System.currentTimeMillis() - lastUsed <= IDLE_TIMEOUT;
+    }
+
+    /**
+     * Returns token of opened JIRA session. When there is no session yet or it
+     * was idle for too long, new login is performed. Login is made without
+     * holding lock of the manager, so it does not block e.g. status of the
+     * instance on configuration page; concurrent logins share one call.
+     * 
+     * @return Token identifying JIRA SOAP session.
+     * @throws JiraException
+     */
+    public String acquire() throws JiraException {
+        String expired = null;
+        synchronized (this) {
+            if (closed) {
+                throw new JiraException("Sessions of JIRA instance " + trackerInstance.getName() + " are closed");
+            }
+            long now = System.currentTimeMillis();
+            if (soapToken != null && now - lastUsed > IDLE_TIMEOUT) {
+                expired = soapToken;
+                soapToken = null;
+            } else if (soapToken != null) {
+                lastUsed = now;
+                return soapToken;
+            }
+        }
+        if (expired != null) {
+            logoutQuietly(expired);
+        }
+        return singleFlight.execute("login", new SingleFlight.Call<String>() {
+            public String call() throws JiraException {
+                return login();
+            }
+        });
+    }
+
+    /**
+     * Logs in to JIRA and publishes the token, unless other login published
+     * one in the meantime.
+     */
+    private String login() throws JiraException {
+        synchronized (this) {
+            if (soapToken != null) {
+                lastUsed = System.currentTimeMillis();
+                return soapToken;
+            }
+        }
+        String token;
+        try {
+            token = getClient().login(trackerInstance.getUser(), trackerInstance.getPass());
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.getClass().getName() + " while connecting to JIRA service.", e);
+            throw new JiraException(e);
+        }
+        synchronized (this) {
+            if (!closed) {
+                soapToken = token;
+                lastUsed = System.currentTimeMillis();
+                return token;
+            }
+        }
+        // Menedzer zostal zamkniety w trakcie logowania
+        logoutQuietly(token);
+        throw new JiraException("Sessions of JIRA instance " + trackerInstance.getName() + " are closed");
+    }
+
+    /**
+     * Marks {@code token} as no longer valid (e.g. JIRA responded with
+     * authentication fault), so next {@link JiraSessionManager#acquire()} will
+     * log in again. Token that was already replaced is ignored.
+     * 
+     * @param token
+     *            Token rejected by JIRA.
+     */
+    public synchronized void invalidate(String token) {
+        if (token != null && token.equals(soapToken)) {
+            soapToken = null;
+        }
+    }
+
+    /**
+     * Logs out from JIRA (if logged in). Manager can still be used afterwards.
+     */
+    public void logout() {
+        String token;
+        synchronized (this) {
+            token = soapToken;
+            soapToken = null;
+        }
+        logoutQuietly(token);
+    }
+
+    /**
+     * Logs out from JIRA and prevents further logins. Called when Jenkins is
+     * shutting down or JIRA instance was reconfigured.
+     */
+    public void close() {
+        String token;
+        PooledConnectionManager connections;
+        synchronized (this) {
+            token = soapToken;
+            soapToken = null;
+            closed = true;
+            connections = connectionManager;
+        }
+        logoutQuietly(token);
+        if (connections != null) {
+            connections.shutdown();
+        }
+    }
+
+    private void logoutQuietly(String token) {
+        if (token == null) {
+            return;
+        }
+        try {
+            getClient().logout(token);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, e.getClass().getName() + " while disconnecting from JIRA service.", e);
+        } catch (JiraException e) {
+            LOG.log(Level.WARNING, "[JiraException] ", e);
+        }
+    }
+
+    /**
+     * Checks whether exception thrown by JIRA SOAP service means that session
+     * token is not (or no longer) valid.
+     * 
+     * @param e
+     *            Exception thrown by JIRA SOAP service.
+     * @return {@code true} for authentication faults.
+     */
+    public static boolean isAuthenticationFault(Throwable e) {
+        if (e instanceof RemoteAuthenticationException) {
+            return true;
+        }
+        if (e instanceof JiraRestException) {
+            return ((JiraRestException) e).isAuthenticationFault();
+        }
+        if (e instanceof AxisFault) {
+            String fault = ((AxisFault) e).getFaultString();
+            return fault != null && fault.indexOf("RemoteAuthenticationException") >= 0;
+        }
+        return false;
+    }
+}
@@ -23,22 +23,25 @@
  */
 package pl.kbaranski.hudson.jiraVersionRelease;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.xml.rpc.ServiceException;
 
 import pl.kbaranski.hudson.jiraVersionRelease.soap.JiraSoapService;
 import pl.kbaranski.hudson.jiraVersionRelease.soap.JiraSoapServiceService;
 import pl.kbaranski.hudson.jiraVersionRelease.soap.JiraSoapServiceServiceLocator;
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteIssue;
 import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteProject;
 import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
 
 /**
- * This class is responsible for encapsulating all JIRA SOAP related logic.
+ * This class is responsible for encapsulating all JIRA related logic. Calls
+ * are sent through {@link JiraClient}, using JIRA SOAP service or REST API.
  * 
  * @author Krzysztof Barański
  * @since 1.1
@@ -52,12 +55,15 @@ public class JiraUtil {
      * defined by regular expression and this is the part of name that matches
      * it.
      * 
-     * @see JiraUtil#prefixRegexp
+     * @see JiraUtil#versionNameMatcher
      */
     private String jiraVersionNamePrefix;
 
-    /** Regular expression defining prefix of version name in JIRA. */
-    private String prefixRegexp;
+    /**
+     * Compiled regular expression defining prefix of version name in JIRA.
+     * {@code null} when object is used only to check connection.
+     */
+    private VersionNameMatcher versionNameMatcher;
     /**
      * Key defining project in JIRA, for which operations should be done. Key is
      * used in JIRA as part of issue number.
@@ -70,12 +76,40 @@ public class JiraUtil {
      */
     private TrackerInstance trackerInstance;
 
-    /** Object used to connect to JIRA SOAP services. */
-    private JiraSoapService soapService;
+    /** Object used to call JIRA. */
+    private JiraClient client;
 
     /** Token used to identify connection with JIRA SOAP service. */
     private String soapToken;
 
+    /**
+     * Versions of the project downloaded before, used instead of downloading
+     * them again. {@code null} if they should be downloaded when needed.
+     * Versions released and created by this object are updated here, so that
+     * next builds using the same list see them.
+     */
+    private List<RemoteVersion> versions;
+
+    /**
+     * Time (in nanoseconds) spent by this object in each JIRA operation,
+     * indexed by {@link JiraOperation#ordinal()}.
+     */
+    private final long[] callNanos = new long[JiraOperation.values().length];
+
+    /**
+     * Manager of shared JIRA sessions. When {@code null}, this object logs in
+     * and out by itself.
+     */
+    private JiraSessionManager sessionManager;
+
+    /**
+     * Single call to JIRA that requires session token. Used to repeat the call
+     * with new token when session has expired.
+     */
+    private interface ClientCall<T> {
+        T call(String token) throws IOException, JiraException;
+    }
+
     /**
      * Creates object. Stores valuable date to use it in the future. When object
      * will be created, {@link JiraUtil#connect()} should be the first method
@@ -92,14 +126,63 @@ public class JiraUtil {
     public JiraUtil(TrackerInstance trackerInstance, String projectKey, String prefixRegexp) {
         this.trackerInstance = trackerInstance;
         this.projectKey = projectKey;
-        this.prefixRegexp = prefixRegexp;
+        if (prefixRegexp != null) {
+            this.versionNameMatcher = new VersionNameMatcher(prefixRegexp);
+        }
+    }
+
+    /**
+     * Creates object that logs in on its own, but uses already created SOAP
+     * service stub.
+     * 
+     * @param trackerInstance
+     *            Specified data required to connect to JIRA SOAP service.
+     * @param soapService
+     *            Stub of JIRA SOAP service available under URL of
+     *            {@code trackerInstance}.
+     * @param projectKey
+     *            Unique key of project in JIRA.
+     * @param prefixRegexp
+     *            Regular expression that defines format of names of versions in
+     *            JIRA.
+     */
+    public JiraUtil(TrackerInstance trackerInstance, JiraSoapService soapService, String projectKey,
+            String prefixRegexp) {
+        this(trackerInstance, projectKey, prefixRegexp);
+        this.client = new SoapJiraClient(soapService);
+    }
+
+    /**
+     * Creates object that uses sessions shared by all jobs connected to the
+     * same JIRA instance instead of logging in on its own.
+     * 
+     * @param sessionManager
+     *            Manager of sessions of JIRA instance.
+     * @param projectKey
+     *            Unique key of project in JIRA.
+     * @param versionNameMatcher
+     *            Compiled regular expression that defines format of names of
+     *            versions in JIRA.
+     */
+    public JiraUtil(JiraSessionManager sessionManager, String projectKey, VersionNameMatcher versionNameMatcher) {
+        this.trackerInstance = sessionManager.getTrackerInstance();
+        this.projectKey = projectKey;
+        this.versionNameMatcher = versionNameMatcher;
+        this.sessionManager = sessionManager;
     }
 
     public void connectNoLogin() throws JiraException {
+        if (sessionManager != null) {
+            client = sessionManager.getClient();
+            return;
+        }
+        if (client != null) {
+            return;
+        }
         JiraSoapServiceService serviceLocator = new JiraSoapServiceServiceLocator();
         // Podłączenie do JIRA
         try {
-            soapService = serviceLocator.getJirasoapserviceV2(trackerInstance.getUrl());
+            client = new SoapJiraClient(serviceLocator.getJirasoapserviceV2(trackerInstance.getUrl()));
         } catch (ServiceException e) {
             LOG.log(Level.SEVERE, e.getClass().getName() + " while getting JIRA service.", e);
             throw new JiraException(e);
@@ -107,70 +190,297 @@ public class JiraUtil {
     }
 
     /**
-     * Logg in to JIRA SOAP service.
+     * Logg in to JIRA SOAP service. When session manager is used, already
+     * opened session is reused.
      * 
      * @throws JiraException
      */
     public void connect() throws JiraException {
+        if (sessionManager != null) {
+            connectNoLogin();
+            // Limit wywolan dotyczy tylko prawdziwego logowania, otwarta sesja jest uzywana bez wywolania JIRA
+            soapToken = retry("connecting to JIRA service", !sessionManager.hasSession(), true,
+                    new ClientCall<String>() {
+                        public String call(String token) throws JiraException {
+                            return sessionManager.acquire();
+                        }
+                    });
+            return;
+        }
         try {
-            if (soapService == null) {
+            if (client == null) {
                 connectNoLogin();
             }
-            soapToken = soapService.login(trackerInstance.getUser(), trackerInstance.getPass());
+            soapToken = client.login(trackerInstance.getUser(), trackerInstance.getPass());
         } catch (Exception e) {
             LOG.log(Level.SEVERE, e.getClass().getName() + " while connecting to JIRA service.", e);
             throw new JiraException(e);
         }
     }
 
+    /**
+     * Invokes {@code call} with current session token. When sessions are
+     * shared, measured call waits for rate limit of JIRA instance (each
+     * attempt separately), goes through circuit breaker of JIRA instance and
+     * is retried (with growing delay) after transient failures.
+     * 
+     * @param action
+     *            Description of the call used in log messages.
+     * @param operation
+     *            Operation which time is added to
+     *            {@link JiraUtil#getTimingSummary()}; {@code null} if not
+     *            measured (it still waits for rate limit). Time of waiting
+     *            for rate limit is added to
+     *            {@link JiraOperation#THROTTLE}.
+     * @param idempotent
+     *            Whether call may be repeated when it's not known if JIRA
+     *            received it (e.g. after read timeout).
+     * @param call
+     *            Call to JIRA.
+     * @return Result of the call.
+     * @throws JiraException
+     */
+    private <T> T execute(String action, JiraOperation operation, boolean idempotent, ClientCall<T> call)
+            throws JiraException {
+        if (operation == null) {
+            return retry(action, true, idempotent, call);
+        }
+        long start = System.nanoTime();
+        long throttled = callNanos[JiraOperation.THROTTLE.ordinal()];
+        try {
+            return retry(action, true, idempotent, call);
+        } finally {
+            throttled = callNanos[JiraOperation.THROTTLE.ordinal()] - throttled;
+            callNanos[operation.ordinal()] += System.nanoTime() - start - throttled;
+        }
+    }
+
+    /**
+     * Invokes {@code call} with current session token, retrying it after
+     * transient failures when sessions are shared. If JIRA rejects the token,
+     * logs in again and repeats the call once; logging in waits for rate limit
+     * and goes through circuit breaker like any other call.
+     * 
+     * @param throttled
+     *            Whether call waits for rate limit of JIRA instance.
+     * @see JiraUtil#execute(String, JiraOperation, boolean, ClientCall)
+     */
+    private <T> T retry(String action, boolean throttled, boolean idempotent, ClientCall<T> call)
+            throws JiraException {
+        CircuitBreaker breaker = sessionManager == null ? null : sessionManager.getCircuitBreaker();
+        boolean login = false;
+        boolean loggedInAgain = false;
+        for (int attempt = 0;; attempt++) {
+            // Jedno oczekiwanie na limit na probe; ponowne logowanie tez jest wywolaniem JIRA
+            if (throttled || login) {
+                throttle();
+            }
+            if (breaker != null && !breaker.allowRequest()) {
+                throw new JiraException("JIRA instance " + trackerInstance.getName()
+                        + " is not available, skipped " + action);
+            }
+            boolean settled = false;
+            try {
+                if (login) {
+                    soapToken = sessionManager.acquire();
+                    login = false;
+                }
+                T result = call.call(soapToken);
+                settled = true;
+                if (breaker != null) {
+                    breaker.onSuccess();
+                }
+                return result;
+            } catch (Exception e) {
+                settled = true;
+                if (!loggedInAgain && sessionManager != null && JiraSessionManager.isAuthenticationFault(e)) {
+                    // JIRA odpowiedziala, wiec jest dostepna; logowanie nie jest kolejna proba
+                    LOG.log(Level.INFO, "JIRA session expired while " + action + ", logging in again.");
+                    breaker.onSuccess();
+                    sessionManager.invalidate(soapToken);
+                    login = true;
+                    loggedInAgain = true;
+                    attempt--;
+                    continue;
+                }
+                Throwable fault = e instanceof JiraException && e.getCause() != null ? e.getCause() : e;
+                boolean transientFault = CircuitBreaker.isTransient(fault);
+                if (breaker == null) {
+                    throw wrap(action, e);
+                }
+                if (!transientFault) {
+                    breaker.onSuccess();
+                    throw wrap(action, e);
+                }
+                breaker.onFailure();
+                if (attempt >= CircuitBreaker.MAX_RETRIES || !(idempotent || CircuitBreaker.isConnectFailure(fault))) {
+                    throw wrap(action, e);
+                }
+                breaker.onRetry();
+                long delay = CircuitBreaker.backoff(attempt);
+                LOG.log(Level.INFO, fault + " while " + action + ", retrying in " + delay + " ms");
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw wrap(action, e);
+                }
+            } finally {
+                // Bez wyniku (np. Error) proba w stanie HALF_OPEN nie moze blokowac kolejnych wywolan
+                if (!settled && breaker != null) {
+                    breaker.onAbort();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for rate limit of JIRA instance when sessions are shared. Time of
+     * waiting is added to {@link JiraOperation#THROTTLE}.
+     */
+    private void throttle() throws JiraException {
+        if (sessionManager == null) {
+            return;
+        }
+        long throttleStart = System.nanoTime();
+        try {
+            sessionManager.throttle(projectKey);
+        } finally {
+            callNanos[JiraOperation.THROTTLE.ordinal()] += System.nanoTime() - throttleStart;
+        }
+    }
+
+    private static JiraException wrap(String action, Exception e) {
+        if (e instanceof JiraException) {
+            return (JiraException) e;
+        }
+        LOG.log(Level.SEVERE, e.getClass().getName() + " while " + action + ".", e);
+        return new JiraException(e);
+    }
+
+    /**
+     * Makes {@code call} together with identical calls made at the same time
+     * by other builds using JIRA instance (see {@link SingleFlight}). Calls
+     * are shared only when sessions are shared.
+     * 
+     * @param operation
+     *            Name of JIRA operation.
+     * @param name
+     *            Name of version the call is made for; {@code null} if call
+     *            concerns whole project.
+     * @param call
+     *            Call to JIRA.
+     * @return Result of the call, possibly made by other build.
+     * @throws JiraException
+     */
+    private <T> T shared(String operation, String name, SingleFlight.Call<T> call) throws JiraException {
+        if (sessionManager == null) {
+            return call.call();
+        }
+        String key = operation + '\n' + projectKey + (name == null ? "" : '\n' + name);
+        return sessionManager.getSingleFlight().execute(key, call);
+    }
+
     /**
      * Creates version in JIRA tracker with name specified in {@code fullName}
      * parameter.
      * 
      * @param fullName
      *            Name of version to create in JIRA.
+     * @return Version created by JIRA.
      * @throws JiraException
      */
-    public void createVersion(String fullName) throws JiraException {
+    public RemoteVersion createVersion(String fullName) throws JiraException {
         // tworzymy nową wersję
-        RemoteVersion newVer = new RemoteVersion();
+        final RemoteVersion newVer = new RemoteVersion();
         newVer.setName(fullName);
-        try {
-            soapService.addVersion(soapToken, projectKey, newVer);
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, e.getClass().getName() + " while creating version in JIRA.", e);
-            throw new JiraException(e);
+        // Ta sama wersja tworzona jednoczesnie przez inna kompilacje nie jest tworzona drugi raz
+        RemoteVersion created = shared("addVersion", fullName, new SingleFlight.Call<RemoteVersion>() {
+            public RemoteVersion call() throws JiraException {
+                RemoteVersion created = execute("creating version in JIRA", JiraOperation.ADD_VERSION, false,
+                        new ClientCall<RemoteVersion>() {
+                            public RemoteVersion call(String token) throws IOException {
+                                return client.addVersion(token, projectKey, newVer);
+                            }
+                        });
+                VersionIndex index = getVersionIndex();
+                if (index != null) {
+                    index.created(created);
+                }
+                return created;
+            }
+        });
+        if (sessionManager != null && created != null) {
+            created = VersionIndex.copy(created);
+        }
+        if (versions != null && created != null) {
+            versions.add(created);
         }
+        return created;
     }
 
     /**
-     * Gets project with key defined in {@code projectKey} property.
+     * Gets project with key defined in {@code projectKey} property. Available
+     * only when JIRA SOAP service is used.
      * 
      * @return JIRA project.
      * @throws JiraException
      */
     public RemoteProject getProject() throws JiraException {
-        try {
-            RemoteProject remoteProject = soapService.getProjectByKey(soapToken, projectKey);
-            return remoteProject;
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, e.getClass().getName() + " while getting project from JIRA.", e);
-            throw new JiraException(e);
+        JiraClient target = client instanceof MeteredJiraClient ? ((MeteredJiraClient) client).getClient() : client;
+        if (!(target instanceof SoapJiraClient)) {
+            throw new JiraException("Getting project is supported only by JIRA SOAP service");
         }
+        final JiraSoapService soapService = ((SoapJiraClient) target).getSoapService();
+        return execute("getting project from JIRA", null, true, new ClientCall<RemoteProject>() {
+            public RemoteProject call(String token) throws java.rmi.RemoteException {
+                return soapService.getProjectByKey(token, projectKey);
+            }
+        });
     }
 
     /**
-     * Logouts from JIRA.
+     * Logouts from JIRA. When session manager is used, session is kept opened
+     * for next builds and only this object forgets its token.
      * 
      * @throws JiraException
      */
     public void disconnect() throws JiraException {
+        if (sessionManager != null || soapToken == null) {
+            soapToken = null;
+            return;
+        }
         try {
-            soapService.logout(soapToken);
-        } catch (java.rmi.RemoteException e) {
-            LOG.log(Level.SEVERE, "RemoteException while disconnecting from JIRA service.", e);
+            client.logout(soapToken);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, e.getClass().getName() + " while disconnecting from JIRA service.", e);
             throw new JiraException(e);
+        } finally {
+            soapToken = null;
+        }
+    }
+
+    /**
+     * Describes time spent by this object in JIRA operations, e.g.
+     * {@code "getVersions 120 ms, releaseVersion 80 ms"}.
+     * 
+     * @return Summary of operation times; empty if no operation was called.
+     */
+    public String getTimingSummary() {
+        StringBuilder summary = new StringBuilder();
+        long total = 0;
+        for (JiraOperation operation : JiraOperation.values()) {
+            long nanos = callNanos[operation.ordinal()];
+            if (nanos > 0) {
+                summary.append(summary.length() > 0 ? ", " : "").append(operation.getDisplayName()).append(' ')
+                        .append(nanos / 1000000).append(" ms");
+                total += nanos;
+            }
         }
+        if (total > 0) {
+            summary.append(" (razem ").append(total / 1000000).append(" ms)");
+        }
+        return summary.toString();
     }
 
     /**
@@ -193,32 +503,170 @@ public class JiraUtil {
      * @throws JiraException
      */
     public RemoteVersion getVersion(int buildNumber) throws JiraException {
-        Pattern versionNumberPrefixPattern = Pattern.compile(prefixRegexp);
-        String versionNumberFullRegex = prefixRegexp + buildNumber;
+        VersionNameMatcher.Lookup lookup = versionNameMatcher.forBuild(buildNumber);
 
-        try {
-            for (RemoteVersion version : soapService.getVersions(soapToken, this.projectKey)) {
+        if (versions != null) {
+            // Wersje pobrane wczesniej sa jedynym zrodlem prawdy, bo kopie z
+            // indeksu nie widza zmian wprowadzonych przez poprzednie kompilacje
+            for (RemoteVersion version : versions) {
                 // Z wersjami wydanymi nic nie chcemy robic
                 if (version.isReleased() || version.isArchived()) {
                     continue;
                 }
-                // Pomijamy również wersje nie pasujące do wzorca
-                if (!Pattern.matches(versionNumberFullRegex, version.getName())) {
-                    continue;
+                // Nazwa musi składać się z prefiksu i numeru kompilacji
+                if (lookup.matches(version.getName())) {
+                    jiraVersionNamePrefix = lookup.getPrefix();
+                    return version;
                 }
-                // Teraz wiemy już, że znaleziona wersja, to ta odpowiadająca
-                // poprzednio zbudowanej wersji w Hudson
-                Matcher matcher = versionNumberPrefixPattern.matcher(version.getName());
-                if (matcher.find()) {
-                    jiraVersionNamePrefix = matcher.group();
+            }
+            return null;
+        }
+
+        VersionIndex index = getVersionIndex();
+        if (index != null) {
+            for (RemoteVersion version : index.lookup(buildNumber)) {
+                if (lookup.matches(version.getName())) {
+                    index.hit();
+                    jiraVersionNamePrefix = lookup.getPrefix();
                     return version;
                 }
             }
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, e.getClass().getName() + " while getting versions from JIRA service.", e);
-            throw new JiraException(e);
+            index.miss();
+        }
+        return findVersion(lookup, index);
+    }
+
+    /**
+     * Reads not released versions from JIRA response until the one matching
+     * {@code lookup} is found. Released and archived versions are skipped
+     * while reading. When version index is used, reading does not stop at
+     * matching version: all not released versions are read (once for all
+     * builds looking for versions of the project at the same time) and index
+     * is reloaded with them.
+     * 
+     * @param lookup
+     *            Matcher of version names of the build.
+     * @param index
+     *            Version index of the project or {@code null}.
+     * @return Matching version or {@code null} if there is no such version.
+     * @throws JiraException
+     */
+    private RemoteVersion findVersion(final VersionNameMatcher.Lookup lookup, final VersionIndex index)
+            throws JiraException {
+        if (index != null) {
+            List<RemoteVersion> unreleased = shared("getVersions", null,
+                    new SingleFlight.Call<List<RemoteVersion>>() {
+                        public List<RemoteVersion> call() throws JiraException {
+                            return loadUnreleased(index);
+                        }
+                    });
+            for (RemoteVersion version : unreleased) {
+                // Nazwa musi składać się z prefiksu i numeru kompilacji
+                if (lookup.matches(version.getName())) {
+                    jiraVersionNamePrefix = lookup.getPrefix();
+                    return VersionIndex.copy(version);
+                }
+            }
+            return null;
+        }
+        RemoteVersion found = execute("getting versions from JIRA service", JiraOperation.GET_VERSIONS, true,
+                new ClientCall<RemoteVersion>() {
+                    public RemoteVersion call(String token) throws IOException {
+                        final RemoteVersion[] match = new RemoteVersion[1];
+                        client.visitUnreleasedVersions(token, projectKey, new VersionVisitor() {
+                            public boolean visit(RemoteVersion version) {
+                                // Nazwa musi składać się z prefiksu i numeru kompilacji
+                                if (lookup.matches(version.getName())) {
+                                    match[0] = version;
+                                    return false;
+                                }
+                                return true;
+                            }
+                        });
+                        return match[0];
+                    }
+                });
+        if (found != null) {
+            jiraVersionNamePrefix = lookup.getPrefix();
+        }
+        return found;
+    }
+
+    /**
+     * Reads all not released versions of the project from JIRA and reloads
+     * {@code index} with them.
+     * 
+     * @return Not released versions; shared by builds, should not be changed.
+     * @throws JiraException
+     */
+    private List<RemoteVersion> loadUnreleased(VersionIndex index) throws JiraException {
+        final List<RemoteVersion> unreleased = new ArrayList<RemoteVersion>();
+        execute("getting versions from JIRA service", JiraOperation.GET_VERSIONS, true, new ClientCall<Object>() {
+            public Object call(String token) throws IOException {
+                unreleased.clear();
+                client.visitUnreleasedVersions(token, projectKey, new VersionVisitor() {
+                    public boolean visit(RemoteVersion version) {
+                        unreleased.add(version);
+                        return true;
+                    }
+                });
+                return null;
+            }
+        });
+        index.reload(unreleased.toArray(new RemoteVersion[unreleased.size()]));
+        LOG.log(Level.FINE, "Version index of " + projectKey + " reloaded (hits: " + index.getHits() + ", misses: "
+                + index.getMisses() + ")");
+        return unreleased;
+    }
+
+    /**
+     * Downloads all versions of the project from JIRA and reloads version
+     * index with them.
+     * 
+     * @return All versions of the project.
+     * @throws JiraException
+     */
+    public RemoteVersion[] fetchVersions() throws JiraException {
+        RemoteVersion[] versions = shared("getVersions", "*", new SingleFlight.Call<RemoteVersion[]>() {
+            public RemoteVersion[] call() throws JiraException {
+                RemoteVersion[] versions = execute("getting versions from JIRA service",
+                        JiraOperation.GET_VERSIONS, true, new ClientCall<RemoteVersion[]>() {
+                            public RemoteVersion[] call(String token) throws IOException {
+                                return client.getVersions(token, projectKey);
+                            }
+                        });
+                VersionIndex index = getVersionIndex();
+                if (index != null) {
+                    index.reload(versions);
+                    LOG.log(Level.FINE, "Version index of " + projectKey + " reloaded (hits: " + index.getHits()
+                            + ", misses: " + index.getMisses() + ")");
+                }
+                return versions;
+            }
+        });
+        if (sessionManager == null || versions == null) {
+            return versions;
         }
-        return null;
+        // Kazdy wywolujacy dostaje wlasne kopie, bo moze je zmieniac
+        RemoteVersion[] copies = new RemoteVersion[versions.length];
+        for (int i = 0; i < versions.length; i++) {
+            copies[i] = VersionIndex.copy(versions[i]);
+        }
+        return copies;
+    }
+
+    /**
+     * Makes {@link JiraUtil#getVersion(int)} use versions already downloaded
+     * (e.g. for other build of the same project) instead of downloading them
+     * again. Versions released and created later are updated in
+     * {@code versions}.
+     * 
+     * @param versions
+     *            All versions of the project; modifiable, not shared with
+     *            other threads.
+     */
+    public void useVersions(List<RemoteVersion> versions) {
+        this.versions = versions;
     }
 
     /**
@@ -229,13 +677,97 @@ public class JiraUtil {
      * @throws JiraException
      */
     public void releaseVersion(RemoteVersion version) throws JiraException {
+        releaseVersion(version, Calendar.getInstance());
+    }
+
+    /**
+     * Marks specified {@code version} as released at given date.
+     * 
+     * @param version
+     *            Version that should be marked as released.
+     * @param releaseDate
+     *            Release date of the version.
+     * @throws JiraException
+     */
+    public void releaseVersion(final RemoteVersion version, Calendar releaseDate) throws JiraException {
         version.setReleased(true);
-        version.setReleaseDate(Calendar.getInstance());
-        try {
-            soapService.releaseVersion(soapToken, projectKey, version);
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, e.getClass().getName() + " while releasing version in JIRA.", e);
-            throw new JiraException(e);
-        }
+        version.setReleaseDate(releaseDate);
+        shared("releaseVersion", version.getId() != null ? version.getId() : version.getName(),
+                new SingleFlight.Call<Object>() {
+                    public Object call() throws JiraException {
+                        VersionIndex index = getVersionIndex();
+                        try {
+                            execute("releasing version in JIRA", JiraOperation.RELEASE_VERSION, true,
+                                    new ClientCall<Object>() {
+                                        public Object call(String token) throws IOException {
+                                            client.releaseVersion(token, projectKey, version);
+                                            return null;
+                                        }
+                                    });
+                        } catch (JiraException e) {
+                            if (index != null) {
+                                // Wersja mogła zostać zmieniona ręcznie w JIRA
+                                index.invalidate();
+                            }
+                            throw e;
+                        }
+                        if (index != null) {
+                            index.released(version);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Marks specified released {@code version} as archived.
+     * 
+     * @param version
+     *            Version that should be archived.
+     * @throws JiraException
+     */
+    public void archiveVersion(final RemoteVersion version) throws JiraException {
+        execute("archiving version in JIRA", JiraOperation.ARCHIVE_VERSION, true, new ClientCall<Object>() {
+            public Object call(String token) throws IOException {
+                client.archiveVersion(token, projectKey, version);
+                return null;
+            }
+        });
+        version.setArchived(true);
+    }
+
+    /**
+     * Returns single page of issues of the project fixed in version, ordered
+     * by key.
+     * 
+     * @param versionName
+     *            Name of fix version.
+     * @param afterKey
+     *            Key of the last issue of previous page; {@code null} for the
+     *            first page.
+     * @param maxResults
+     *            Maximum number of returned issues.
+     * @return Issues of the page; fewer than {@code maxResults} on the last
+     *         page.
+     * @throws JiraException
+     */
+    public RemoteIssue[] getFixedIssues(final String versionName, final String afterKey, final int maxResults)
+            throws JiraException {
+        return execute("searching issues in JIRA", JiraOperation.SEARCH_ISSUES, true,
+                new ClientCall<RemoteIssue[]>() {
+                    public RemoteIssue[] call(String token) throws IOException {
+                        return client.getFixedIssues(token, projectKey, versionName, afterKey, maxResults);
+                    }
+                });
+    }
+
+    /**
+     * Returns index of not released versions of the project shared between
+     * builds.
+     * 
+     * @return Version index or {@code null} if sessions are not shared.
+     */
+    private VersionIndex getVersionIndex() {
+        return sessionManager == null ? null : sessionManager.getVersionIndex(projectKey);
     }
 }
@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.EnvironmentContributingAction;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Result of JIRA version release attached to the build. When release is done
+ * in the background, action is attached as pending and completed later.
+ * Names of released and created versions are available to the rest of the
+ * build (and to builds it triggers with its variables) as environment
+ * variables. When the following step of running build reads them while the
+ * release is pending, it waits for the release; steps that do not read
+ * environment do not wait. Build releasing versions in many JIRA projects has
+ * one action per project; variables without project key in name describe the
+ * first project.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class JiraVersionReleaseAction implements EnvironmentContributingAction {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(JiraVersionReleaseAction.class.getName());
+
+    /**
+     * Maximum time (in milliseconds) step of running build waits for pending
+     * release before its environment is built without JIRA variables.
+     */
+    public static final long RESULT_WAIT = Long.getLong(JiraVersionReleaseAction.class.getName() + ".resultWait",
+            10 * 60 * 1000L);
+
+    /** Environment variable with name of version released by the build. */
+    public static final String RELEASED_VERSION = "JIRA_RELEASED_VERSION";
+
+    /** Environment variable with JIRA id of version released by the build. */
+    public static final String RELEASED_VERSION_ID = "JIRA_RELEASED_VERSION_ID";
+
+    /** Environment variable with name of version created for the next build. */
+    public static final String CREATED_VERSION = "JIRA_CREATED_VERSION";
+
+    /** Key of JIRA project. */
+    private final String projectKey;
+
+    /** Result of the release, {@code null} while it's pending. */
+    private volatile ReleaseResult result;
+
+    public JiraVersionReleaseAction(String projectKey) {
+        this.projectKey = projectKey;
+    }
+
+    public JiraVersionReleaseAction(ReleaseResult result) {
+        this(result.getProjectKey());
+        this.result = result;
+    }
+
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    public ReleaseResult getResult() {
+        return result;
+    }
+
+    public boolean isPending() {
+        return result == null;
+    }
+
+    /**
+     * Stores result of release done in the background.
+     * 
+     * @param result
+     *            Result of the release.
+     */
+    public synchronized void complete(ReleaseResult result) {
+        this.result = result;
+        notifyAll();
+    }
+
+    /**
+     * Waits for result of release done in the background.
+     * 
+     * @param timeout
+     *            Maximum wait in milliseconds.
+     * @return Result of the release or {@code null} if it's still pending.
+     * @throws InterruptedException
+     */
+    public synchronized ReleaseResult awaitResult(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        for (long remaining = timeout; result == null && remaining > 0; remaining = deadline
+                - System.currentTimeMillis()) {
+            wait(remaining);
+        }
+        return result;
+    }
+
+    /**
+     * Adds names of released and created versions to environment of the
+     * build, also with project key appended (e.g.
+     * {@code JIRA_RELEASED_VERSION_ABC}). While the build is running and
+     * release is pending, waits for it (at most
+     * {@link JiraVersionReleaseAction#RESULT_WAIT}); nothing is added if it's
+     * still pending.
+     */
+    public void buildEnvVars(AbstractBuild<?, ?> build, EnvVars env) {
+        ReleaseResult result = this.result;
+        if (result == null && build.isBuilding()) {
+            try {
+                result = awaitResult(RESULT_WAIT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (result == null) {
+                LOG.log(Level.WARNING, "JIRA release in project " + projectKey + " of " + build
+                        + " is still pending, its variables are not set");
+            }
+        }
+        if (result == null) {
+            return;
+        }
+        boolean first = build.getAction(JiraVersionReleaseAction.class) == this;
+        String suffix = "_" + projectKey.replaceAll("[^A-Za-z0-9_]", "_");
+        put(env, RELEASED_VERSION, suffix, first, result.getReleasedVersion());
+        put(env, RELEASED_VERSION_ID, suffix, first, result.getReleasedVersionId());
+        put(env, CREATED_VERSION, suffix, first, result.getCreatedVersion());
+    }
+
+    private static void put(EnvVars env, String name, String suffix, boolean first, String value) {
+        if (value == null) {
+            return;
+        }
+        if (first) {
+            env.put(name, value);
+        }
+        env.put(name + suffix, value);
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "JIRA";
+    }
+
+    public String getUrlName() {
+        return null;
+    }
+}
@@ -36,10 +36,18 @@ import hudson.tasks.Publisher;
 import hudson.util.CopyOnWriteList;
 import hudson.util.FormValidation;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.PatternSyntaxException;
 
 import net.sf.json.JSONObject;
 
@@ -47,8 +55,6 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
-import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
-
 /**
  * Main class of Hudson / Jenkins plugin that is responsible for
  * 
@@ -66,16 +72,75 @@ public class JiraVersionReleasePublisher extends Notifier {
     /** Regular expression that defines version name schema in JIRA. */
     private String prefixRegexp;
 
-    public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
+    /**
+     * Whether JIRA operations should be queued and run in the background
+     * instead of blocking the build.
+     */
+    private boolean async;
+
+    /**
+     * Number of versions of the next builds kept created ahead of time;
+     * {@code 0} if the next version is created during the build.
+     */
+    private int lookahead;
+
+    /**
+     * Number of the newest released versions that are never archived;
+     * {@code 0} if versions are not archived by count.
+     */
+    private int archiveKeep;
+
+    /**
+     * Minimal age (in days) of released versions that are archived; {@code 0}
+     * if versions are not archived by age.
+     */
+    private int archiveAfterDays;
+
+    /**
+     * Format of release notes attached to the build ({@link ReleaseNotes#TEXT}
+     * or {@link ReleaseNotes#HTML}); empty if release notes are not written.
+     */
+    private String releaseNotes;
+
+    /**
+     * Additional JIRA projects in which version of the build is released;
+     * {@code null} if version is released only in
+     * {@link JiraVersionReleasePublisher#projectKey}.
+     */
+    private List<ReleaseTarget> targets;
+
+    /** Compiled {@link JiraVersionReleasePublisher#prefixRegexp}. */
+    private transient VersionNameMatcher versionNameMatcher;
 
     /** Logger object. */
     private final static Logger LOG = Logger.getLogger(JiraVersionReleasePublisher.class.getName());
 
     @DataBoundConstructor
-    public JiraVersionReleasePublisher(String instanceName, String projectKey, String prefixRegexp) {
+    public JiraVersionReleasePublisher(String instanceName, String projectKey, String prefixRegexp, boolean async,
+            int lookahead, int archiveKeep, int archiveAfterDays, String releaseNotes) {
         this.instanceName = instanceName;
         this.projectKey = projectKey;
         this.prefixRegexp = prefixRegexp;
+        this.async = async;
+        this.lookahead = Math.max(0, lookahead);
+        this.archiveKeep = Math.max(0, archiveKeep);
+        this.archiveAfterDays = Math.max(0, archiveAfterDays);
+        this.releaseNotes = Util.fixEmpty(releaseNotes);
+        this.versionNameMatcher = new VersionNameMatcher(prefixRegexp);
+    }
+
+    /**
+     * Compiles regular expression after configuration is loaded from disk.
+     * 
+     * @return This object.
+     */
+    protected Object readResolve() {
+        try {
+            versionNameMatcher = new VersionNameMatcher(prefixRegexp);
+        } catch (PatternSyntaxException e) {
+            LOG.log(Level.SEVERE, "Invalid version prefix regular expression: " + prefixRegexp, e);
+        }
+        return this;
     }
 
     public String getInstanceName() {
@@ -94,6 +159,62 @@ public class JiraVersionReleasePublisher extends Notifier {
         return prefixRegexp;
     }
 
+    public boolean isAsync() {
+        return async;
+    }
+
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    public int getArchiveKeep() {
+        return archiveKeep;
+    }
+
+    public int getArchiveAfterDays() {
+        return archiveAfterDays;
+    }
+
+    public String getReleaseNotes() {
+        return releaseNotes;
+    }
+
+    /**
+     * Returns additional JIRA projects in which version of the build is
+     * released.
+     * 
+     * @return Additional projects; empty if there are none.
+     */
+    public List<ReleaseTarget> getAdditionalTargets() {
+        return targets == null ? Collections.<ReleaseTarget> emptyList() : Collections.unmodifiableList(targets);
+    }
+
+    /**
+     * Returns all JIRA projects in which version of the build is released:
+     * {@link JiraVersionReleasePublisher#projectKey} followed by additional
+     * ones.
+     * 
+     * @return JIRA projects with their version name schemas.
+     */
+    public List<ReleaseTarget> getTargets() {
+        List<ReleaseTarget> all = new ArrayList<ReleaseTarget>(1 + (targets == null ? 0 : targets.size()));
+        all.add(new ReleaseTarget(projectKey, prefixRegexp, versionNameMatcher));
+        if (targets != null) {
+            all.addAll(targets);
+        }
+        return all;
+    }
+
+    /**
+     * Returns compiled version name schema.
+     * 
+     * @return Version name matcher or {@code null} if
+     *         {@link JiraVersionReleasePublisher#prefixRegexp} is not valid.
+     */
+    public VersionNameMatcher getVersionNameMatcher() {
+        return versionNameMatcher;
+    }
+
     @Override
     public boolean needsToRunAfterFinalized() {
         return true;
@@ -101,55 +222,171 @@ public class JiraVersionReleasePublisher extends Notifier {
 
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
-        return BuildStepMonitor.BUILD;
+        // Kolejnosc zapewnia kolejka, w ktorej operacje wykonywane sa po kolei
+        return async ? BuildStepMonitor.NONE : BuildStepMonitor.BUILD;
     }
 
     public TrackerInstance getCurrentTracker() {
-        if (this.instanceName == null) {
-            return null;
-        }
-        for (TrackerInstance ti : DESCRIPTOR.getInstances()) {
-            if (instanceName.equals(ti.getName())) {
-                return ti;
-            }
-        }
-        return null;
+        return getDescriptor().getClients().getInstance(instanceName);
     }
 
     /**
      * This method is being invoked when build has finished and it's responsible
      * for marking as released JIRA version that matches that build and than
-     * creating next version in JIRA (not released). {@inheritDoc}
+     * creating next version in JIRA (not released). Versions in many JIRA
+     * projects are released in parallel. In asynchronous mode work is only
+     * queued and its result is attached to the build later.
+     * {@inheritDoc}
      */
     @Override
-    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+    public boolean perform(final AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+        JiraClientRegistry clients = getDescriptor().getClients();
+        if (clients.get(instanceName) == null) {
+            listener.getLogger().println("JIRA: Nie zdefiniowano instancji JIRA o nazwie " + instanceName);
+            return false;
+        }
+        List<ReleaseTarget> all = getTargets();
+        for (ReleaseTarget target : all) {
+            if (target.getVersionNameMatcher() == null) {
+                listener.getLogger().println(
+                        "JIRA: Niepoprawne wyrazenie regularne prefiksu wersji: " + target.getPrefixRegexp());
+                return false;
+            }
+        }
+        ReleasedVersions releasedVersions = ReleasedVersions.of(build.getProject());
+        List<ReleaseTask> tasks = new ArrayList<ReleaseTask>(all.size());
+        for (ReleaseTarget target : all) {
+            ReleaseTask task = new ReleaseTask(clients, instanceName, target.getProjectKey(),
+                    target.getVersionNameMatcher(), build.getNumber(), lookahead, releasedVersions);
+            if (!async) {
+                tasks.add(task);
+            } else if (submit(clients, build, task)) {
+                listener.getLogger().println(
+                        "JIRA: Wydanie wersji w projekcie " + target.getProjectKey() + " zlecono w tle");
+            } else {
+                listener.getLogger().println("JIRA: Kolejka operacji JIRA jest pelna, wersja w projekcie "
+                        + target.getProjectKey() + " zostanie wydana teraz");
+                tasks.add(task);
+            }
+        }
+        if (tasks.isEmpty()) {
+            return true;
+        }
 
-        JiraUtil jiraUtil = new JiraUtil(getCurrentTracker(), projectKey, prefixRegexp);
+        List<ReleaseResult> results;
+        try {
+            results = release(clients, tasks);
+        } catch (InterruptedException e) {
+            listener.getLogger().println("JIRA: Przerwano oczekiwanie na wydanie wersji");
+            return false;
+        }
+        boolean success = true;
+        for (ReleaseResult result : results) {
+            result.print(listener.getLogger());
+            build.addAction(new JiraVersionReleaseAction(result));
+            if (releaseNotes != null && result.getReleasedVersion() != null) {
+                try {
+                    int count = writeReleaseNotes(build, result);
+                    listener.getLogger().println("JIRA: Zapisano informacje o wydaniu (" + count + " zgloszen)");
+                } catch (Exception e) {
+                    // Informacje o wydaniu sa dodatkiem, nie psuja kompilacji
+                    listener.getLogger().println("JIRA: Nie udalo sie zapisac informacji o wydaniu: " + e);
+                }
+            }
+            success &= result.isSuccess();
+        }
+        return success;
+    }
 
+    /**
+     * Queues release of single JIRA project in the background and attaches
+     * pending result to the build.
+     * 
+     * @return {@code false} if queue is full and nothing was queued.
+     */
+    private boolean submit(JiraClientRegistry clients, final AbstractBuild<?, ?> build, final ReleaseTask task) {
+        final JiraVersionReleaseAction action = new JiraVersionReleaseAction(task.getProjectKey());
+        build.addAction(action);
+        boolean queued = clients.getDispatcher(instanceName).submit(new Runnable() {
+            public void run() {
+                ReleaseResult result = task.call();
+                action.complete(result);
+                if (releaseNotes != null && result.getReleasedVersion() != null) {
+                    try {
+                        writeReleaseNotes(build, result);
+                    } catch (Exception e) {
+                        LOG.log(Level.WARNING, "Failed to write release notes of " + build, e);
+                    }
+                }
+                try {
+                    build.save();
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "Failed to save JIRA release result of " + build, e);
+                }
+            }
+        });
+        if (!queued) {
+            build.getActions().remove(action);
+        }
+        return queued;
+    }
+
+    /**
+     * Releases versions of the build in JIRA projects. Single project is
+     * released by the build thread; many projects are released in parallel by
+     * {@link JiraClientRegistry#getFanOut()}, so the build waits about as long
+     * as for the slowest project.
+     * 
+     * @return Results in order of {@code tasks}.
+     * @throws InterruptedException
+     *             If build was interrupted; releases not started yet are
+     *             skipped.
+     */
+    private List<ReleaseResult> release(JiraClientRegistry clients, List<ReleaseTask> tasks)
+            throws InterruptedException {
+        if (tasks.size() == 1) {
+            ReleaseTask task = tasks.get(0);
+            return Collections.singletonList(clients.getBatcher(instanceName, task.getProjectKey()).release(task));
+        }
+        List<Future<ReleaseResult>> futures = new ArrayList<Future<ReleaseResult>>(tasks.size());
+        for (final ReleaseTask task : tasks) {
+            final ReleaseBatcher batcher = clients.getBatcher(instanceName, task.getProjectKey());
+            futures.add(clients.getFanOut().submit(new Callable<ReleaseResult>() {
+                public ReleaseResult call() throws InterruptedException {
+                    return batcher.release(task);
+                }
+            }));
+        }
+        List<ReleaseResult> results = new ArrayList<ReleaseResult>(tasks.size());
         try {
-            jiraUtil.connect();
-            RemoteVersion version = jiraUtil.getVersion(build.getNumber());
-            jiraUtil.releaseVersion(version);
-            listener.getLogger().println(
-                    "JIRA: Wydano wersje " + version.getName() + " w projekcie " + this.getProjectKey());
-
-            String newVerName = jiraUtil.getJiraVersionNamePrefix();
-            if (newVerName != null) {
-                // tworzymy nową wersję
-                String newVersionFullName = newVerName + (build.getNumber() + 1);
-                jiraUtil.createVersion(newVersionFullName);
-                listener.getLogger().println(
-                        "JIRA: Utworzono wersje " + newVersionFullName + " w projekcie " + this.getProjectKey());
-                return true;
-            } else {
-                listener.getLogger().println(
-                        "JIRA: W JIRA nie odnaleziono wersji odpowiadającej biezacemu numerowi kopilacji");
+            for (Future<ReleaseResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    ReleaseResult result = new ReleaseResult(tasks.get(results.size()).getProjectKey());
+                    result.setError(String.valueOf(e.getCause()));
+                    results.add(result);
+                }
+            }
+        } finally {
+            for (Future<ReleaseResult> future : futures) {
+                // Rozpoczetych operacji nie przerywamy, zostaly zapisane w dzienniku
+                future.cancel(false);
             }
-            jiraUtil.disconnect();
-        } catch (JiraException e) {
-            LOG.log(Level.SEVERE, "[JiraException] ", e);
         }
-        return false;
+        return results;
+    }
+
+    /**
+     * Writes issues fixed in version released by the build to file in
+     * directory of artifacts of the build.
+     * 
+     * @return Number of written issues.
+     */
+    private int writeReleaseNotes(AbstractBuild<?, ?> build, ReleaseResult result) throws JiraException,
+            IOException {
+        return new ReleaseNotes(getDescriptor().getClients(), instanceName, result.getProjectKey(),
+                result.getReleasedVersion(), releaseNotes).write(build.getArtifactsDir());
     }
 
     @Override
@@ -173,12 +410,25 @@ public class JiraVersionReleasePublisher extends Notifier {
          */
         private final CopyOnWriteList<TrackerInstance> instances = new CopyOnWriteList<TrackerInstance>();
 
+        /**
+         * Long-lived JIRA clients of {@link DescriptorImpl#instances}, replaced
+         * together with them.
+         */
+        private final transient JiraClientRegistry clients = new JiraClientRegistry();
+
+        /**
+         * Whether {@link DescriptorImpl#clients} knows current instances. Set
+         * on first use, so nothing is prepared for JIRA during startup.
+         */
+        private transient volatile boolean clientsUpdated;
+
         /**
          * Constructor that loads current configuration.
          */
         public DescriptorImpl() {
             super(JiraVersionReleasePublisher.class);
             load();
+            clients.setJournalFile(PluginImpl.getJournalFile());
         }
 
         @Override
@@ -205,6 +455,7 @@ public class JiraVersionReleasePublisher extends Notifier {
          */
         public void setInstances(TrackerInstance instance) {
             instances.add(instance);
+            updateClients();
         }
 
         /**
@@ -217,14 +468,72 @@ public class JiraVersionReleasePublisher extends Notifier {
             return instances.toArray(new TrackerInstance[instances.size()]);
         }
 
+        /**
+         * Returns registry of JIRA clients, one for each of
+         * {@link JiraVersionReleasePublisher.DescriptorImpl#instances}.
+         * 
+         * @return JIRA clients registry.
+         */
+        public JiraClientRegistry getClients() {
+            if (!clientsUpdated) {
+                synchronized (clients) {
+                    if (!clientsUpdated) {
+                        updateClients();
+                    }
+                }
+            }
+            return clients;
+        }
+
+        /**
+         * Returns registry of JIRA clients if it was already used, so callers
+         * that only clean up do not prepare JIRA instances.
+         * 
+         * @return JIRA clients registry or {@code null} if nothing used it yet.
+         */
+        public JiraClientRegistry findClients() {
+            return clientsUpdated ? clients : null;
+        }
+
+        private void updateClients() {
+            clients.update(instances);
+            clientsUpdated = true;
+        }
+
         private static final String MY_PREFIX = "iraVersionReleasePublisher.";
 
+        /** Prefix of fields of additional JIRA projects. */
+        private static final String TARGET_PREFIX = MY_PREFIX + "target.";
+
         @Override
         public Publisher newInstance(StaplerRequest req, JSONObject formData) throws FormException {
+            String prefixRegexp = req.getParameter(MY_PREFIX + "prefixRegexp");
+            try {
+                new VersionNameMatcher(prefixRegexp);
+            } catch (PatternSyntaxException e) {
+                throw new FormException(e.getMessage(), "prefixRegexp");
+            }
+            String[] targetRegexps = req.getParameterValues(TARGET_PREFIX + "prefixRegexp");
+            if (targetRegexps != null) {
+                for (String targetRegexp : targetRegexps) {
+                    try {
+                        new VersionNameMatcher(targetRegexp);
+                    } catch (PatternSyntaxException e) {
+                        throw new FormException(e.getMessage(), "prefixRegexp");
+                    }
+                }
+            }
             JiraVersionReleasePublisher jpp = req.bindParameters(JiraVersionReleasePublisher.class, MY_PREFIX);
             if (jpp.instanceName == null) {
-                jpp = null; // not configured
+                return null; // not configured
+            }
+            List<ReleaseTarget> targets = new ArrayList<ReleaseTarget>();
+            for (ReleaseTarget target : req.bindParametersToList(ReleaseTarget.class, TARGET_PREFIX)) {
+                if (Util.fixEmpty(target.getProjectKey()) != null) {
+                    targets.add(target);
+                }
             }
+            jpp.targets = targets.isEmpty() ? null : targets;
             return jpp;
         }
 
@@ -235,70 +544,98 @@ public class JiraVersionReleasePublisher extends Notifier {
                 LOG.info("" + o.toString());
             }
             instances.replaceBy(req.bindParametersToList(TrackerInstance.class, MY_PREFIX));
+            updateClients();
             LOG.info("instances.size() : " + instances.size());
             save();
             return true;
         }
 
         public FormValidation doLogonCheck(StaplerRequest staplerRequest) {
-
-            LOG.log(Level.INFO, "parametrow : " + staplerRequest.getParameterMap().size());
-            for (Object s : staplerRequest.getParameterMap().keySet()) {
-                LOG.log(Level.INFO, "param name : " + s);
-            }
             String url = Util.fixEmpty(staplerRequest.getParameter("url"));
             String user = Util.fixEmpty(staplerRequest.getParameter("user"));
             String pass = Util.fixEmpty(staplerRequest.getParameter("pass"));
-            LOG.log(Level.INFO, "Logon check. url = " + url + ", user = " + user + ", pass = " + pass);
             if (url == null || user == null) {
                 // It's impossible to check without url or username
-                FormValidation.ok();
+                return FormValidation.ok();
             }
-
             try {
-                URL url2 = new URL(url);
-                JiraUtil jiraUtil = new JiraUtil(new TrackerInstance(null, url2, user, pass), null, null);
-                jiraUtil.connect();
+                return getClients().getValidations().checkLogon(new URL(url), user, pass);
             } catch (MalformedURLException e) {
                 LOG.log(Level.WARNING, "URL validation failed. Conversion to URL ends with " + e.getMessage());
-                FormValidation.error(e.getMessage());
-            } catch (JiraException e) {
-                Throwable cause = e.getCause();
-                if (cause != null && cause.getMessage() != null && !"".equals(cause.getMessage())) {
-                    return FormValidation.error(cause.getMessage());
-                } else {
-                    return FormValidation.error(e.getMessage());
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        /**
+         * Describes state of background work done for JIRA instance. Shown on
+         * global configuration page.
+         * 
+         * @param name
+         *            Name of JIRA instance.
+         * @return Human readable status.
+         */
+        public String getStatus(String name) {
+            StringBuilder status = new StringBuilder();
+            JiraSessionManager sessionManager = getClients().get(name);
+            if (sessionManager != null) {
+                CircuitBreaker breaker = sessionManager.getCircuitBreaker();
+                status.append("Circuit: ").append(breaker.getState()).append(", failures: ")
+                        .append(breaker.getFailures()).append(", retries: ").append(breaker.getRetries())
+                        .append(", rejected calls: ").append(breaker.getRejected());
+                long shared = sessionManager.getSingleFlight().getShared();
+                if (shared > 0) {
+                    status.append("; Shared calls: ").append(shared);
+                }
+                long hits = 0;
+                long misses = 0;
+                for (VersionIndex index : sessionManager.getVersionIndexes().values()) {
+                    hits += index.getHits();
+                    misses += index.getMisses();
+                }
+                if (hits + misses > 0) {
+                    status.append("; Version index hits: ").append(hits).append(", misses: ").append(misses);
+                }
+                RateLimiter limiter = sessionManager.getRateLimiter();
+                if (limiter.isLimited()) {
+                    status.append("; Calls waiting for rate limit: ").append(limiter.getWaiting());
                 }
+                PooledConnectionManager pool = sessionManager.findConnectionManager();
+                if (pool != null) {
+                    status.append("; Connections leased: ").append(pool.getLeased()).append(", idle: ")
+                            .append(pool.getIdle()).append(", created: ").append(pool.getCreated())
+                            .append(" of ").append(pool.getLeases()).append(" leases");
+                }
+            }
+            ReleaseDispatcher dispatcher = getClients().findDispatcher(name);
+            if (dispatcher != null) {
+                status.append(status.length() > 0 ? "; " : "").append("Queued operations: ")
+                        .append(dispatcher.getQueueDepth()).append(", oldest queued for ")
+                        .append(dispatcher.getQueueAge() / 1000).append(" s");
             }
+            return status.toString();
+        }
 
+        public FormValidation doPrefixRegexpCheck(@QueryParameter final String value) {
+            try {
+                new VersionNameMatcher(value);
+            } catch (PatternSyntaxException e) {
+                return FormValidation.error(e.getMessage());
+            }
             return FormValidation.ok();
         }
 
         public FormValidation doUrlCheck(@QueryParameter final String value) {
-            LOG.log(Level.INFO, "     URL validate");
             String url = Util.fixEmpty(value);
             if (url == null) {
                 // Empty URL is not a bug...
-                LOG.log(Level.INFO, "No URL specified :(");
                 return FormValidation.ok();
             }
             try {
-                URL url2 = new URL(url);
-                JiraUtil jiraUtil = new JiraUtil(new TrackerInstance(null, url2, null, null), null, null);
-                jiraUtil.connectNoLogin();
+                return getClients().getValidations().checkUrl(new URL(url));
             } catch (MalformedURLException e) {
                 LOG.log(Level.WARNING, "URL validation failed. Conversion to URL ends with " + e.getMessage());
-                FormValidation.error(e.getMessage());
-            } catch (JiraException e) {
-                Throwable cause = e.getCause();
-                if (cause != null && cause.getMessage() != null && !"".equals(cause.getMessage())) {
-                    return FormValidation.error(cause.getMessage());
-                } else {
-                    return FormValidation.error(e.getMessage());
-                }
+                return FormValidation.error(e.getMessage());
             }
-
-            return FormValidation.ok();
         }
     }
 }
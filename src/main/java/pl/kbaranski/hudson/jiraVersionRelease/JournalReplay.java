@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Replays JIRA operations of single instance which were recorded in
+ * {@link ReleaseJournal} but not done (e.g. because of restart or JIRA
+ * outage). Before each operation current versions are checked in JIRA, so
+ * operations that were actually done are not repeated.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class JournalReplay implements Runnable {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(JournalReplay.class.getName());
+
+    /** Registry of JIRA clients. */
+    private final JiraClientRegistry clients;
+
+    /** Journal the operations come from. */
+    private final ReleaseJournal journal;
+
+    /** Name of JIRA instance. */
+    private final String instanceName;
+
+    /** Operations to replay. */
+    private final List<ReleaseJournal.Entry> entries;
+
+    public JournalReplay(JiraClientRegistry clients, ReleaseJournal journal, String instanceName,
+            List<ReleaseJournal.Entry> entries) {
+        this.clients = clients;
+        this.journal = journal;
+        this.instanceName = instanceName;
+        this.entries = entries;
+    }
+
+    public void run() {
+        try {
+            replay();
+        } finally {
+            clients.replayed(entries);
+        }
+    }
+
+    private void replay() {
+        JiraSessionManager sessionManager = clients.get(instanceName);
+        if (sessionManager == null) {
+            return;
+        }
+        Map<String, List<ReleaseJournal.Entry>> byProject = new LinkedHashMap<String, List<ReleaseJournal.Entry>>();
+        for (ReleaseJournal.Entry entry : entries) {
+            List<ReleaseJournal.Entry> list = byProject.get(entry.getProjectKey());
+            if (list == null) {
+                list = new ArrayList<ReleaseJournal.Entry>();
+                byProject.put(entry.getProjectKey(), list);
+            }
+            list.add(entry);
+        }
+        for (Map.Entry<String, List<ReleaseJournal.Entry>> project : byProject.entrySet()) {
+            replay(sessionManager, project.getKey(), project.getValue());
+        }
+    }
+
+    private void replay(JiraSessionManager sessionManager, String projectKey, List<ReleaseJournal.Entry> list) {
+        JiraUtil jiraUtil = new JiraUtil(sessionManager, projectKey, null);
+        try {
+            jiraUtil.connect();
+            Map<String, RemoteVersion> versions = new HashMap<String, RemoteVersion>();
+            for (RemoteVersion version : jiraUtil.fetchVersions()) {
+                versions.put(version.getName(), version);
+            }
+            for (ReleaseJournal.Entry entry : list) {
+                RemoteVersion version = versions.get(entry.getVersionName());
+                switch (entry.getOperation()) {
+                case RELEASE:
+                    if (version == null) {
+                        LOG.log(Level.WARNING, "Version " + entry.getVersionName() + " no longer exists in project "
+                                + projectKey + ", it will not be released");
+                    } else if (!version.isReleased()) {
+                        jiraUtil.releaseVersion(version);
+                        LOG.log(Level.INFO, "Released version " + entry.getVersionName() + " in project "
+                                + projectKey + " (replayed)");
+                    }
+                    break;
+                case CREATE:
+                    if (version == null) {
+                        // Wydanie tej wersji moze byc kolejna operacja
+                        versions.put(entry.getVersionName(), jiraUtil.createVersion(entry.getVersionName()));
+                        LOG.log(Level.INFO, "Created version " + entry.getVersionName() + " in project "
+                                + projectKey + " (replayed)");
+                    }
+                    break;
+                }
+                journal.done(entry.getId());
+            }
+        } catch (JiraException e) {
+            LOG.log(Level.WARNING, "Replay of JIRA operations in project " + projectKey
+                    + " failed, it will be retried later", e);
+        } finally {
+            try {
+                jiraUtil.disconnect();
+            } catch (JiraException e) {
+                LOG.log(Level.WARNING, "[JiraException] ", e);
+            }
+        }
+    }
+}
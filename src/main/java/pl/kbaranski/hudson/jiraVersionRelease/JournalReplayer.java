@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Hudson;
+import hudson.model.TaskListener;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Periodically replays JIRA operations recorded in {@link ReleaseJournal}
+ * that failed while Hudson / Jenkins was running (e.g. during JIRA outage),
+ * so they don't wait for the next restart and don't expire after
+ * {@link ReleaseJournal#MAX_AGE}. Only operations older than
+ * {@link JournalReplayer#MIN_AGE} are replayed, as younger ones may still be
+ * in progress.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ * @see JournalReplay
+ */
+@Extension
+public class JournalReplayer extends AsyncPeriodicWork {
+
+    /** Time (in milliseconds) between runs. */
+    public static final long PERIOD = Long.getLong(JournalReplayer.class.getName() + ".period", 15 * MIN);
+
+    /** Minimum age (in milliseconds) of replayed operation. */
+    public static final long MIN_AGE = Long.getLong(JournalReplayer.class.getName() + ".minAge", 10 * MIN);
+
+    public JournalReplayer() {
+        super("JIRA journal replay");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return PERIOD;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        File file = PluginImpl.getJournalFile();
+        if (file == null || !file.exists()) {
+            return;
+        }
+        JiraVersionReleasePublisher.DescriptorImpl descriptor = Hudson.getInstance().getDescriptorByType(
+                JiraVersionReleasePublisher.DescriptorImpl.class);
+        if (descriptor == null) {
+            return;
+        }
+        descriptor.getClients().replayJournal(MIN_AGE);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+/**
+ * Builds JIRA Query Language searches sent by {@link JiraClient}
+ * implementations.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+final class Jql {
+
+    private Jql() {
+    }
+
+    /**
+     * Builds search of issues of project fixed in version, ordered by key.
+     * Searches are paged by key instead of offset (which JIRA SOAP service
+     * does not support), so issues changed between pages are neither skipped
+     * nor repeated.
+     * 
+     * @param projectKey
+     *            Key of JIRA project.
+     * @param versionName
+     *            Name of fix version.
+     * @param afterKey
+     *            Only issues with greater key are found; {@code null} for the
+     *            first page.
+     * @return JQL query.
+     */
+    static String fixedIssues(String projectKey, String versionName, String afterKey) {
+        StringBuilder jql = new StringBuilder("project = ").append(quote(projectKey)).append(" AND fixVersion = ")
+                .append(quote(versionName));
+        if (afterKey != null) {
+            jql.append(" AND issuekey > ").append(quote(afterKey));
+        }
+        return jql.append(" ORDER BY issuekey ASC").toString();
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Streaming reader of JSON array of versions returned by JIRA REST API
+ * ({@code /rest/api/2/project/{key}/versions}). Versions are read one by one
+ * straight from the response stream, without building JSON tree of the whole
+ * response. Fields not used by the plugin (descriptions, links etc.) are
+ * skipped.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class JsonVersionReader {
+
+    /** Format of release date used by JIRA REST API. */
+    static final String DATE_FORMAT = "yyyy-MM-dd";
+
+    /** Source of JSON text. Should be buffered. */
+    private final Reader in;
+
+    /** Character read ahead, {@code -2} if there is none. */
+    private int next = -2;
+
+    /** Reused buffer of string values. */
+    private final StringBuilder buffer = new StringBuilder();
+
+    /** Parser of release dates, created on first use. */
+    private SimpleDateFormat dateFormat;
+
+    public JsonVersionReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads all versions from JSON array.
+     * 
+     * @return Versions in order of the array.
+     * @throws IOException
+     *             On read error or malformed JSON.
+     */
+    public RemoteVersion[] readAll() throws IOException {
+        List<RemoteVersion> versions = new ArrayList<RemoteVersion>();
+        expect('[');
+        if (peekToken() == ']') {
+            read();
+            return new RemoteVersion[0];
+        }
+        while (true) {
+            versions.add(readVersion());
+            int c = readToken();
+            if (c == ']') {
+                break;
+            }
+            if (c != ',') {
+                throw error("',' or ']' expected", c);
+            }
+        }
+        return versions.toArray(new RemoteVersion[versions.size()]);
+    }
+
+    /**
+     * Reads versions from JSON array and passes not released (and not
+     * archived) ones to {@code visitor}.
+     * 
+     * @param visitor
+     *            Receiver of versions.
+     * @return {@code false} if {@code visitor} stopped reading, {@code true}
+     *         if the whole array was read.
+     * @throws IOException
+     *             On read error or malformed JSON.
+     */
+    public boolean readUnreleased(VersionVisitor visitor) throws IOException {
+        expect('[');
+        if (peekToken() == ']') {
+            read();
+            return true;
+        }
+        while (true) {
+            RemoteVersion version = readVersion();
+            if (!version.isReleased() && !version.isArchived() && !visitor.visit(version)) {
+                return false;
+            }
+            int c = readToken();
+            if (c == ']') {
+                return true;
+            }
+            if (c != ',') {
+                throw error("',' or ']' expected", c);
+            }
+        }
+    }
+
+    /**
+     * Reads single version object.
+     * 
+     * @return Version read.
+     * @throws IOException
+     *             On read error or malformed JSON.
+     */
+    public RemoteVersion readVersion() throws IOException {
+        RemoteVersion version = new RemoteVersion();
+        expect('{');
+        if (peekToken() == '}') {
+            read();
+            return version;
+        }
+        while (true) {
+            expect('"');
+            String field = readString();
+            expect(':');
+            if ("id".equals(field)) {
+                version.setId(readScalar());
+            } else if ("name".equals(field)) {
+                version.setName(readScalar());
+            } else if ("released".equals(field)) {
+                version.setReleased("true".equals(readScalar()));
+            } else if ("archived".equals(field)) {
+                version.setArchived("true".equals(readScalar()));
+            } else if ("releaseDate".equals(field)) {
+                version.setReleaseDate(parseDate(readScalar()));
+            } else {
+                skipValue();
+            }
+            int c = readToken();
+            if (c == '}') {
+                break;
+            }
+            if (c != ',') {
+                throw error("',' or '}' expected", c);
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Reads string, number, boolean or {@code null} value.
+     * 
+     * @return Text of the value; {@code null} for JSON {@code null}.
+     */
+    private String readScalar() throws IOException {
+        int c = peekToken();
+        if (c == '"') {
+            read();
+            return readString();
+        }
+        if (c == '{' || c == '[') {
+            skipValue();
+            return null;
+        }
+        String literal = readLiteral();
+        return "null".equals(literal) ? null : literal;
+    }
+
+    /**
+     * Reads rest of string which opening quote was already read.
+     */
+    private String readString() throws IOException {
+        buffer.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return buffer.toString();
+            }
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                case 'b':
+                    buffer.append('\b');
+                    break;
+                case 'f':
+                    buffer.append('\f');
+                    break;
+                case 'n':
+                    buffer.append('\n');
+                    break;
+                case 'r':
+                    buffer.append('\r');
+                    break;
+                case 't':
+                    buffer.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            throw new IOException("Malformed \\u escape in JSON string");
+                        }
+                        code = code * 16 + digit;
+                    }
+                    buffer.append((char) code);
+                    break;
+                default:
+                    buffer.append((char) c);
+                }
+            } else {
+                buffer.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Reads number, {@code true}, {@code false} or {@code null}.
+     */
+    private String readLiteral() throws IOException {
+        buffer.setLength(0);
+        while (true) {
+            int c = peek();
+            if (c < 0 || c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                break;
+            }
+            buffer.append((char) read());
+        }
+        if (buffer.length() == 0) {
+            throw error("value expected", peek());
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Skips value of any type, including nested objects and arrays.
+     */
+    private void skipValue() throws IOException {
+        int c = peekToken();
+        if (c == '"') {
+            read();
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = read();
+                if (c == '"') {
+                    skipString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        } else {
+            readLiteral();
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                read();
+            }
+        }
+    }
+
+    private Calendar parseDate(String text) throws IOException {
+        if (text == null || text.length() == 0) {
+            return null;
+        }
+        if (dateFormat == null) {
+            dateFormat = new SimpleDateFormat(DATE_FORMAT);
+        }
+        try {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTime(dateFormat.parse(text));
+            return calendar;
+        } catch (ParseException e) {
+            throw new IOException("Malformed release date: " + text);
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = readToken();
+        if (c != expected) {
+            throw error("'" + expected + "' expected", c);
+        }
+    }
+
+    /** Reads next character that is not white space. */
+    private int readToken() throws IOException {
+        int c = peekToken();
+        next = -2;
+        return c;
+    }
+
+    /** Returns next character that is not white space without consuming it. */
+    private int peekToken() throws IOException {
+        int c = peek();
+        while (c >= 0 && Character.isWhitespace(c)) {
+            next = -2;
+            c = peek();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (next == -2) {
+            next = in.read();
+        }
+        return next;
+    }
+
+    /** Reads next character; end of stream is an error. */
+    private int read() throws IOException {
+        int c = peek();
+        next = -2;
+        if (c < 0) {
+            throw new IOException("Unexpected end of JSON response");
+        }
+        return c;
+    }
+
+    private static IOException error(String message, int found) {
+        return new IOException("Malformed JSON response: " + message + ", found "
+                + (found < 0 ? "end of stream" : "'" + (char) found + "'"));
+    }
+}
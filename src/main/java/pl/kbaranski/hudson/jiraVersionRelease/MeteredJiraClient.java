@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.io.IOException;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteIssue;
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * {@link JiraClient} recording latency, number of calls and errors of each
+ * operation of another client in {@link JiraMetrics}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class MeteredJiraClient implements JiraClient {
+
+    /** Client which calls are measured. */
+    private final JiraClient client;
+
+    /** Metrics of JIRA instance. */
+    private final JiraMetrics metrics;
+
+    public MeteredJiraClient(JiraClient client, JiraMetrics metrics) {
+        this.client = client;
+        this.metrics = metrics;
+    }
+
+    public JiraClient getClient() {
+        return client;
+    }
+
+    public String login(String user, String pass) throws IOException {
+        OperationMetrics m = metrics.get(JiraMetrics.SESSION, JiraOperation.LOGIN);
+        long start = m.start();
+        boolean success = false;
+        try {
+            String token = client.login(user, pass);
+            success = true;
+            return token;
+        } finally {
+            m.stop(start, success);
+        }
+    }
+
+    public RemoteVersion[] getVersions(String token, String projectKey) throws IOException {
+        OperationMetrics m = metrics.get(projectKey, JiraOperation.GET_VERSIONS);
+        long start = m.start();
+        boolean success = false;
+        try {
+            RemoteVersion[] versions = client.getVersions(token, projectKey);
+            success = true;
+            return versions;
+        } finally {
+            m.stop(start, success);
+        }
+    }
+
+    public void visitUnreleasedVersions(String token, String projectKey, VersionVisitor visitor) throws IOException {
+        OperationMetrics m = metrics.get(projectKey, JiraOperation.GET_VERSIONS);
+        long start = m.start();
+        boolean success = false;
+        try {
+            client.visitUnreleasedVersions(token, projectKey, visitor);
+            success = true;
+        } finally {
+            m.stop(start, success);
+        }
+    }
+
+    public void releaseVersion(String token, String projectKey, RemoteVersion version) throws IOException {
+        OperationMetrics m = metrics.get(projectKey, JiraOperation.RELEASE_VERSION);
+        long start = m.start();
+        boolean success = false;
+        try {
+            client.releaseVersion(token, projectKey, version);
+            success = true;
+        } finally {
+            m.stop(start, success);
+        }
+    }
+
+    public void archiveVersion(String token, String projectKey, RemoteVersion version) throws IOException {
+        OperationMetrics m = metrics.get(projectKey, JiraOperation.ARCHIVE_VERSION);
+        long start = m.start();
+        boolean success = false;
+        try {
+            client.archiveVersion(token, projectKey, version);
+            success = true;
+        } finally {
+            m.stop(start, success);
+        }
+    }
+
+    public RemoteVersion addVersion(String token, String projectKey, RemoteVersion version) throws IOException {
+        OperationMetrics m = metrics.get(projectKey, JiraOperation.ADD_VERSION);
+        long start = m.start();
+        boolean success = false;
+        try {
+            RemoteVersion created = client.addVersion(token, projectKey, version);
+            success = true;
+            return created;
+        } finally {
+            m.stop(start, success);
+        }
+    }
+
+    public RemoteIssue[] getFixedIssues(String token, String projectKey, String versionName, String afterKey,
+            int maxResults) throws IOException {
+        OperationMetrics m = metrics.get(projectKey, JiraOperation.SEARCH_ISSUES);
+        long start = m.start();
+        boolean success = false;
+        try {
+            RemoteIssue[] issues = client.getFixedIssues(token, projectKey, versionName, afterKey, maxResults);
+            success = true;
+            return issues;
+        } finally {
+            m.stop(start, success);
+        }
+    }
+
+    public boolean logout(String token) throws IOException {
+        OperationMetrics m = metrics.get(JiraMetrics.SESSION, JiraOperation.LOGOUT);
+        long start = m.start();
+        boolean success = false;
+        try {
+            boolean loggedOut = client.logout(token);
+            success = true;
+            return loggedOut;
+        } finally {
+            m.stop(start, success);
+        }
+    }
+}
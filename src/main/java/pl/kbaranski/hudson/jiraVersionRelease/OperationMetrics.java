@@ -0,0 +1,186 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histogram of single JIRA operation called for single
+ * project. All counters are lock-free and recording does not allocate.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+    /**
+     * Metrics of operation currently called by the thread. Used to attribute
+     * bytes transferred by HTTP transport to the operation.
+     */
+    private static final ThreadLocal<OperationMetrics> CURRENT = new ThreadLocal<OperationMetrics>();
+
+    /**
+     * Bytes transferred by calls of the thread since
+     * {@link OperationMetrics#countBytes()}; {@code null} if not counted.
+     */
+    private static final ThreadLocal<long[]> COUNTED = new ThreadLocal<long[]>();
+
+    /** Number of calls. */
+    private final AtomicLong calls = new AtomicLong();
+
+    /** Number of calls that failed. */
+    private final AtomicLong errors = new AtomicLong();
+
+    /** Sum of latencies in microseconds. */
+    private final AtomicLong totalMicros = new AtomicLong();
+
+    /** Maximal latency in microseconds. */
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /** Number of bytes of requests and responses which length was known. */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Latency of the first call in microseconds, {@code -1} before it. First
+     * call pays for class loading and connection setup (cold start).
+     */
+    private final AtomicLong firstMicros = new AtomicLong(-1);
+
+    /** Distribution of latencies. */
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    /**
+     * Marks beginning of a call made by current thread.
+     * 
+     * @return Start time to be passed to {@link OperationMetrics#stop}.
+     */
+    public long start() {
+        CURRENT.set(this);
+        return System.nanoTime();
+    }
+
+    /**
+     * Records call started by {@link OperationMetrics#start()}.
+     * 
+     * @param start
+     *            Value returned by {@link OperationMetrics#start()}.
+     * @param success
+     *            Whether call succeeded.
+     */
+    public void stop(long start, boolean success) {
+        long micros = (System.nanoTime() - start) / 1000;
+        CURRENT.set(null);
+        calls.incrementAndGet();
+        if (!success) {
+            errors.incrementAndGet();
+        }
+        totalMicros.addAndGet(micros);
+        firstMicros.compareAndSet(-1, micros);
+        histogram.record(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    /**
+     * Adds {@code count} bytes to operation currently called by this thread
+     * (if any). Called by HTTP transports.
+     * 
+     * @param count
+     *            Number of bytes sent or received; ignored if negative
+     *            (unknown length).
+     */
+    static void transferred(long count) {
+        if (count <= 0) {
+            return;
+        }
+        OperationMetrics current = CURRENT.get();
+        if (current != null) {
+            current.bytes.addAndGet(count);
+        }
+        long[] counted = COUNTED.get();
+        if (counted != null) {
+            counted[0] += count;
+        }
+    }
+
+    /**
+     * Starts counting bytes transferred by calls made by current thread,
+     * independently of other threads calling the same operation.
+     */
+    public static void countBytes() {
+        COUNTED.set(new long[1]);
+    }
+
+    /**
+     * Stops counting started by {@link OperationMetrics#countBytes()}.
+     * 
+     * @return Number of bytes transferred by calls made by current thread
+     *         since counting started; {@code 0} if length was not known
+     *         (or call was made by other thread, see {@link SingleFlight}).
+     */
+    public static long countedBytes() {
+        long[] counted = COUNTED.get();
+        COUNTED.remove();
+        return counted == null ? 0 : counted[0];
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public double getMeanMillis() {
+        long count = calls.get();
+        return count == 0 ? 0 : totalMicros.get() / 1000.0 / count;
+    }
+
+    public double getFirstMillis() {
+        return Math.max(0, firstMicros.get()) / 1000.0;
+    }
+
+    public double getMaxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    public double getP50Millis() {
+        return histogram.getPercentile(0.5) / 1000.0;
+    }
+
+    public double getP95Millis() {
+        return histogram.getPercentile(0.95) / 1000.0;
+    }
+
+    public double getP99Millis() {
+        return histogram.getPercentile(0.99) / 1000.0;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import hudson.Plugin;
+import hudson.model.Hudson;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+/**
+ * Entry point of the plugin. Takes care of resources that live longer than
+ * single build, like JIRA sessions and journal of JIRA operations.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class PluginImpl extends Plugin {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(PluginImpl.class.getName());
+
+    /** Name of the journal file in Hudson / Jenkins home directory. */
+    private static final String JOURNAL_FILE = "jiraVersionRelease-journal.log";
+
+    /**
+     * Whether JIRA instances should be prepared in background after startup,
+     * so the first build does not pay for loading SOAP stack and logging in.
+     * Off by default, so startup does not connect to JIRA instances.
+     */
+    public static final boolean WARM_UP = Boolean.getBoolean(PluginImpl.class.getName() + ".warmUp");
+
+    /**
+     * Starts background warm-up of JIRA instances (if enabled) and replays
+     * operations that were not done before last shutdown. When there is no
+     * journal file, nothing is prepared at startup; journal is opened by the
+     * first build.
+     */
+    @Override
+    public void postInitialize() throws Exception {
+        JiraVersionReleasePublisher.DescriptorImpl descriptor = getDescriptor();
+        if (descriptor == null) {
+            return;
+        }
+        if (WARM_UP) {
+            final JiraClientRegistry clients = descriptor.getClients();
+            new JiraThreadFactory("JIRA warm-up").newThread(new Runnable() {
+                public void run() {
+                    clients.warmUp();
+                }
+            }).start();
+        }
+        if (getJournalFile().exists()) {
+            descriptor.getClients().replayJournal();
+        }
+    }
+
+    /**
+     * Logs out all JIRA sessions opened by the plugin when Hudson / Jenkins
+     * is shutting down. Nothing is loaded if JIRA clients were never used.
+     */
+    @Override
+    public void stop() throws Exception {
+        JiraVersionReleasePublisher.DescriptorImpl descriptor = getDescriptor();
+        JiraClientRegistry clients = descriptor == null ? null : descriptor.findClients();
+        if (clients != null) {
+            clients.close();
+        }
+    }
+
+    /**
+     * Returns journal file of JIRA operations in Hudson / Jenkins home
+     * directory.
+     * 
+     * @return Journal file or {@code null} if Hudson / Jenkins is not running.
+     */
+    static File getJournalFile() {
+        Hudson hudson = Hudson.getInstance();
+        return hudson == null ? null : new File(hudson.getRootDir(), JOURNAL_FILE);
+    }
+
+    private static JiraVersionReleasePublisher.DescriptorImpl getDescriptor() {
+        return Hudson.getInstance().getDescriptorByType(JiraVersionReleasePublisher.DescriptorImpl.class);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+
+/**
+ * Pool of keep-alive HTTP connections to single JIRA instance. Connections
+ * are reused by consecutive SOAP calls, so TCP (and TLS) handshake is done
+ * only when pool has no open connection. Counts connections that had to be
+ * opened, so effectiveness of the pool may be monitored.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class PooledConnectionManager extends MultiThreadedHttpConnectionManager {
+
+    /** Maximum number of connections used when not configured. */
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+    /** Connect timeout (in seconds) used when not configured. */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10;
+
+    /** Read timeout (in seconds) used when not configured. */
+    public static final int DEFAULT_READ_TIMEOUT = 60;
+
+    /** Idle time (in seconds) after which unused connection is closed. */
+    public static final int DEFAULT_IDLE_TIMEOUT = 60;
+
+    /** Connect timeout in milliseconds. */
+    private final int connectTimeout;
+
+    /** Read timeout in milliseconds. */
+    private final int readTimeout;
+
+    /** Time in milliseconds after which idle connections are closed. */
+    private final long idleTimeout;
+
+    /** Number of connections leased from the pool. */
+    private final AtomicLong leases = new AtomicLong();
+
+    /** Number of leased connections that had to be opened. */
+    private final AtomicLong created = new AtomicLong();
+
+    /** Number of connections leased and not yet released. */
+    private final AtomicInteger leased = new AtomicInteger();
+
+    /**
+     * Creates pool configured with settings of {@code instance}. Settings
+     * which are not set (equal to {@code 0}) are replaced with defaults.
+     * 
+     * @param instance
+     *            JIRA instance which connections will be pooled.
+     */
+    public PooledConnectionManager(TrackerInstance instance) {
+        int maxConnections = orDefault(instance.getMaxConnections(), DEFAULT_MAX_CONNECTIONS);
+        this.connectTimeout = orDefault(instance.getConnectTimeout(), DEFAULT_CONNECT_TIMEOUT) * 1000;
+        this.readTimeout = orDefault(instance.getReadTimeout(), DEFAULT_READ_TIMEOUT) * 1000;
+        this.idleTimeout = orDefault(instance.getIdleTimeout(), DEFAULT_IDLE_TIMEOUT) * 1000L;
+        getParams().setDefaultMaxConnectionsPerHost(maxConnections);
+        getParams().setMaxTotalConnections(maxConnections);
+        getParams().setStaleCheckingEnabled(true);
+        getParams().setConnectionTimeout(connectTimeout);
+        getParams().setSoTimeout(readTimeout);
+    }
+
+    /**
+     * Leases connection from the pool. Timeouts are set on each leased
+     * connection, because Axis overwrites timeouts of the whole manager with
+     * timeout of the SOAP call.
+     */
+    @Override
+    public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+            throws ConnectionPoolTimeoutException {
+        HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+        connection.getParams().setConnectionTimeout(connectTimeout);
+        connection.getParams().setSoTimeout(readTimeout);
+        leases.incrementAndGet();
+        leased.incrementAndGet();
+        if (!connection.isOpen()) {
+            created.incrementAndGet();
+        }
+        return connection;
+    }
+
+    /**
+     * Returns connection to the pool.
+     */
+    @Override
+    public void releaseConnection(HttpConnection connection) {
+        super.releaseConnection(connection);
+        leased.decrementAndGet();
+    }
+
+    /**
+     * Closes connections that were not used for longer than configured idle
+     * timeout.
+     */
+    public void evictIdle() {
+        closeIdleConnections(idleTimeout);
+    }
+
+    /**
+     * Returns number of connections currently used by SOAP calls.
+     * 
+     * @return Number of leased connections.
+     */
+    public int getLeased() {
+        return Math.max(0, leased.get());
+    }
+
+    /**
+     * Returns number of open connections waiting in the pool for next call.
+     * 
+     * @return Number of idle connections.
+     */
+    public int getIdle() {
+        return Math.max(0, getConnectionsInPool() - getLeased());
+    }
+
+    public long getLeases() {
+        return leases.get();
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    private static int orDefault(int value, int defaultValue) {
+        return value > 0 ? value : defaultValue;
+    }
+}
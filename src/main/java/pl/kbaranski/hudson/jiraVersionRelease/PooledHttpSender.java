@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import org.apache.axis.AxisFault;
+import org.apache.axis.EngineConfiguration;
+import org.apache.axis.Message;
+import org.apache.axis.MessageContext;
+import org.apache.axis.SimpleTargetedChain;
+import org.apache.axis.components.net.CommonsHTTPClientPropertiesFactory;
+import org.apache.axis.configuration.BasicClientConfig;
+import org.apache.axis.transport.http.CommonsHTTPSender;
+import org.apache.axis.transport.http.HTTPTransport;
+
+/**
+ * Axis HTTP transport sending SOAP calls through connections of
+ * {@link PooledConnectionManager} instead of opening new connection for each
+ * call, like default Axis {@code HTTPSender} does.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class PooledHttpSender extends CommonsHTTPSender {
+    public PooledHttpSender(PooledConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    /**
+     * Reads client properties only. Connection manager created here by
+     * {@link CommonsHTTPSender} would be shared by all JIRA instances and is
+     * replaced by manager passed to constructor anyway.
+     */
+    @Override
+    protected void initialize() {
+        clientProperties = CommonsHTTPClientPropertiesFactory.create();
+    }
+
+    /**
+     * Sends SOAP call and counts length of response in metrics of current
+     * JIRA operation (when JIRA sends it).
+     */
+    @Override
+    public void invoke(MessageContext msgContext) throws AxisFault {
+        super.invoke(msgContext);
+        Message response = msgContext.getResponseMessage();
+        String[] length = response == null ? null : response.getMimeHeaders().getHeader("Content-Length");
+        if (length != null && length.length > 0) {
+            try {
+                OperationMetrics.transferred(Long.parseLong(length[0].trim()));
+            } catch (NumberFormatException e) {
+                // Nieznana dlugosc nie jest liczona
+            }
+        }
+    }
+
+    /**
+     * Creates Axis client configuration which sends HTTP(S) requests through
+     * {@code connectionManager}.
+     * 
+     * @param connectionManager
+     *            Pool of connections to JIRA instance.
+     * @return Axis engine configuration to be passed to service locator.
+     */
+    public static EngineConfiguration createConfiguration(PooledConnectionManager connectionManager) {
+        BasicClientConfig config = new BasicClientConfig();
+        config.deployTransport(HTTPTransport.DEFAULT_TRANSPORT_NAME, new SimpleTargetedChain(new PooledHttpSender(
+                connectionManager)));
+        return config;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting rate of calls to single JIRA instance, shared by all
+ * jobs and executors. Up to one second worth of calls may be made at once;
+ * afterwards calls are let through at configured rate. Callers that have to
+ * wait are queued by key (JIRA project) and served in turns, one call of each
+ * key at a time, so a job making many calls does not starve the others. Wait
+ * is bounded; caller that was not let through in time gives up.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class RateLimiter {
+
+    /** Maximum wait (in seconds) used when it's not configured. */
+    public static final int DEFAULT_MAX_WAIT = Integer.getInteger(RateLimiter.class.getName() + ".maxWait", 60);
+
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    /** Calls per second; {@code 0} if rate is not limited. */
+    private double rate;
+
+    /** Maximum number of tokens collected while there are no calls. */
+    private double capacity;
+
+    /** Tokens available now. */
+    private double tokens;
+
+    /** Time (from {@link #nanoTime()}) of the last refill. */
+    private long refilled = nanoTime();
+
+    /** Maximum wait for a token, in nanoseconds. */
+    private long maxWaitNanos = DEFAULT_MAX_WAIT * 1000000000L;
+
+    /** Waiting callers by key. */
+    private final Map<String, LinkedList<Waiter>> queues = new HashMap<String, LinkedList<Waiter>>();
+
+    /** Keys with waiting callers, in order of their turns. */
+    private final LinkedList<String> turns = new LinkedList<String>();
+
+    /** Number of waiting callers. */
+    private int waiting;
+
+    /** Caller waiting for a token. */
+    private static final class Waiter {
+        private boolean granted;
+    }
+
+    /**
+     * Changes limit. Callers already waiting are served at the new rate.
+     * 
+     * @param requestsPerSecond
+     *            Calls per second; {@code 0} (or less) turns the limit off.
+     * @param maxWait
+     *            Maximum wait in seconds; {@code 0} (or less) means
+     *            {@link RateLimiter#DEFAULT_MAX_WAIT}.
+     */
+    public synchronized void setRate(int requestsPerSecond, int maxWait) {
+        refill();
+        boolean wasLimited = rate > 0;
+        rate = Math.max(0, requestsPerSecond);
+        capacity = Math.max(1, rate);
+        tokens = wasLimited ? Math.min(tokens, capacity) : capacity;
+        maxWaitNanos = (maxWait > 0 ? maxWait : DEFAULT_MAX_WAIT) * 1000000000L;
+        notifyAll();
+    }
+
+    public synchronized boolean isLimited() {
+        return rate > 0;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * Waits until call may be made.
+     * 
+     * @param key
+     *            Key of the caller (JIRA project); callers with different keys
+     *            are served in turns.
+     * @return {@code true} if call may be made, {@code false} if maximum wait
+     *         has passed.
+     * @throws InterruptedException
+     */
+    public synchronized boolean acquire(String key) throws InterruptedException {
+        if (rate <= 0) {
+            return true;
+        }
+        refill();
+        if (waiting == 0 && tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        Waiter waiter = new Waiter();
+        LinkedList<Waiter> queue = queues.get(key);
+        if (queue == null) {
+            queue = new LinkedList<Waiter>();
+            queues.put(key, queue);
+            turns.add(key);
+        }
+        queue.add(waiter);
+        waiting++;
+        long deadline = nanoTime() + maxWaitNanos;
+        try {
+            for (;;) {
+                grant();
+                if (waiter.granted || rate <= 0) {
+                    return true;
+                }
+                long remaining = deadline - nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                long untilToken = (long) ((1 - tokens) * NANOS_PER_SECOND / rate);
+                await(Math.max(1, Math.min(remaining, untilToken)));
+            }
+        } finally {
+            if (!waiter.granted) {
+                queue.remove(waiter);
+                waiting--;
+                if (queue.isEmpty()) {
+                    queues.remove(key);
+                    turns.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands available tokens to waiting callers, one for each key in turn.
+     */
+    private void grant() {
+        refill();
+        boolean granted = false;
+        while (tokens >= 1 && !turns.isEmpty()) {
+            String key = turns.removeFirst();
+            LinkedList<Waiter> queue = queues.get(key);
+            queue.removeFirst().granted = true;
+            waiting--;
+            tokens -= 1;
+            granted = true;
+            if (queue.isEmpty()) {
+                queues.remove(key);
+            } else {
+                turns.addLast(key);
+            }
+        }
+        if (granted) {
+            notifyAll();
+        }
+    }
+
+    private void refill() {
+        long now = nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilled) * rate / NANOS_PER_SECOND);
+        refilled = now;
+    }
+
+    /**
+     * Current time in nanoseconds. Tests replace it so they do not depend on
+     * the wall clock.
+     */
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Waits on this limiter's monitor for at most given time or until it's
+     * notified. Called while holding the monitor; replaced in tests together
+     * with {@link #nanoTime()}.
+     */
+    void await(long nanos) throws InterruptedException {
+        TimeUnit.NANOSECONDS.timedWait(this, nanos);
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Brings JIRA versions of jobs in line with their build history, e.g. after
+ * JIRA outage or when the plugin is added to a job with long history. Versions
+ * of each JIRA project are read once and compared with builds of all jobs
+ * using the project:
+ * <ul>
+ * <li>not released version of finished build is released,</li>
+ * <li>missing version of finished build is created and released (with date
+ * of the build),</li>
+ * <li>missing version of running build or of the next build is created.</li>
+ * </ul>
+ * Version names are matched the same way as during build (see
+ * {@link VersionNameMatcher}); names of missing versions get prefix of the
+ * closest build that has its version. Changes are computed first, so they can
+ * be reviewed, and applied afterwards by a few threads at once. Every
+ * operation is recorded in {@link ReleaseJournal} before it's sent, so
+ * operations interrupted by restart are replayed; running reconciliation
+ * again finds only what is still missing.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class Reconciliation {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(Reconciliation.class.getName());
+
+    /** Number of JIRA operations applied at once. */
+    public static final int PARALLELISM = Integer.getInteger(Reconciliation.class.getName() + ".parallelism", 4);
+
+    /** Stage of reconciliation. */
+    public enum State {
+        PLANNING, PLANNED, APPLYING, FINISHED
+    }
+
+    /** Change of single version. */
+    public enum Operation {
+        RELEASE, CREATE, CREATE_AND_RELEASE
+    }
+
+    /** Registry of JIRA clients. */
+    private final JiraClientRegistry clients;
+
+    /** Reconciled jobs. */
+    private final List<AbstractProject<?, ?>> jobs;
+
+    /** Computed changes, in order of jobs and builds. */
+    private final List<Change> changes = Collections.synchronizedList(new ArrayList<Change>());
+
+    /** Descriptions of jobs (or their builds) that could not be reconciled. */
+    private final List<String> problems = Collections.synchronizedList(new ArrayList<String>());
+
+    private volatile State state = State.PLANNING;
+
+    /** Number of applied changes. */
+    private final AtomicInteger applied = new AtomicInteger();
+
+    /** Number of changes that failed. */
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /** Set when changes not applied yet should be skipped. */
+    private volatile boolean cancelled;
+
+    /** Time when applying started and finished, {@code 0} if not yet. */
+    private volatile long started, finished;
+
+    public Reconciliation(JiraClientRegistry clients, List<AbstractProject<?, ?>> jobs) {
+        this.clients = clients;
+        this.jobs = jobs;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public List<Change> getChanges() {
+        synchronized (changes) {
+            return new ArrayList<Change>(changes);
+        }
+    }
+
+    public List<String> getProblems() {
+        synchronized (problems) {
+            return new ArrayList<String>(problems);
+        }
+    }
+
+    /**
+     * Returns changes that failed.
+     * 
+     * @return Failed changes with their errors.
+     */
+    public List<Change> getFailures() {
+        List<Change> failures = new ArrayList<Change>();
+        for (Change change : getChanges()) {
+            if (change.getError() != null) {
+                failures.add(change);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Returns number of planned changes of given kind.
+     * 
+     * @param operation
+     *            Name of {@link Operation}.
+     * @return Number of changes.
+     */
+    public int count(String operation) {
+        int count = 0;
+        for (Change change : getChanges()) {
+            if (change.getOperation().name().equals(operation)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getTotal() {
+        return changes.size();
+    }
+
+    public int getApplied() {
+        return applied.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Returns time spent applying changes.
+     * 
+     * @return Time in seconds; {@code 0} if applying did not start.
+     */
+    public long getElapsedSeconds() {
+        if (started == 0) {
+            return 0;
+        }
+        return ((finished == 0 ? System.currentTimeMillis() : finished) - started) / 1000;
+    }
+
+    /**
+     * Stops reconciliation; changes not sent to JIRA yet are skipped.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Computes changes. Versions of each JIRA project are read once.
+     */
+    public void plan() {
+        Map<String, RemoteVersion[]> snapshots = new HashMap<String, RemoteVersion[]>();
+        Set<String> planned = new HashSet<String>();
+        try {
+            for (AbstractProject<?, ?> job : jobs) {
+                if (cancelled) {
+                    return;
+                }
+                JiraVersionReleasePublisher publisher = job.getPublishersList().get(
+                        JiraVersionReleasePublisher.class);
+                if (publisher == null) {
+                    problems.add(job.getFullName() + ": JIRA version release is not configured");
+                    continue;
+                }
+                for (ReleaseTarget target : publisher.getTargets()) {
+                    if (target.getVersionNameMatcher() == null) {
+                        problems.add(job.getFullName() + ": invalid version prefix of " + target.getProjectKey());
+                        continue;
+                    }
+                    String project = publisher.getInstanceName() + '/' + target.getProjectKey();
+                    RemoteVersion[] versions = snapshots.get(project);
+                    if (versions == null) {
+                        try {
+                            versions = fetchVersions(publisher.getInstanceName(), target.getProjectKey());
+                        } catch (JiraException e) {
+                            problems.add(job.getFullName() + ": " + ReleaseTask.describe(e));
+                            continue;
+                        }
+                        snapshots.put(project, versions);
+                    }
+                    plan(job, publisher.getInstanceName(), target, versions, planned);
+                }
+            }
+        } finally {
+            state = State.PLANNED;
+        }
+    }
+
+    private RemoteVersion[] fetchVersions(String instanceName, String projectKey) throws JiraException {
+        JiraSessionManager sessionManager = clients.get(instanceName);
+        if (sessionManager == null) {
+            throw new JiraException("No JIRA instance named " + instanceName);
+        }
+        JiraUtil jiraUtil = new JiraUtil(sessionManager, projectKey, null);
+        jiraUtil.connect();
+        try {
+            return jiraUtil.fetchVersions();
+        } finally {
+            jiraUtil.disconnect();
+        }
+    }
+
+    /**
+     * Computes changes of single job in single JIRA project.
+     * 
+     * @param planned
+     *            Versions already planned to change, as
+     *            {@code instance/project/version}; the same version of
+     *            project shared by jobs is changed once.
+     */
+    private void plan(AbstractProject<?, ?> job, String instanceName, ReleaseTarget target, RemoteVersion[] versions,
+            Set<String> planned) {
+        Map<Integer, List<RemoteVersion>> byNumber = new HashMap<Integer, List<RemoteVersion>>();
+        for (RemoteVersion version : versions) {
+            int number = VersionIndex.number(version.getName());
+            List<RemoteVersion> list = byNumber.get(number);
+            if (list == null) {
+                list = new ArrayList<RemoteVersion>(1);
+                byNumber.put(number, list);
+            }
+            list.add(version);
+        }
+        VersionNameMatcher matcher = target.getVersionNameMatcher();
+        // Prefiksy nazw istniejacych wersji, wg numeru kompilacji
+        TreeMap<Integer, String> prefixes = new TreeMap<Integer, String>();
+        List<Change> jobChanges = new ArrayList<Change>();
+        List<AbstractBuild<?, ?>> missing = new ArrayList<AbstractBuild<?, ?>>();
+        List<Integer> upcoming = new ArrayList<Integer>();
+        for (AbstractBuild<?, ?> build : job.getBuilds()) {
+            VersionNameMatcher.Lookup lookup = matcher.forBuild(build.getNumber());
+            RemoteVersion version = find(byNumber.get(build.getNumber()), lookup);
+            if (version != null) {
+                prefixes.put(build.getNumber(), lookup.getPrefix());
+                if (!build.isBuilding() && !version.isReleased() && !version.isArchived()) {
+                    jobChanges.add(new Change(job, instanceName, target, build.getNumber(), Operation.RELEASE,
+                            lookup.getPrefix(), version.getName(), version, build.getTimestamp()));
+                }
+            } else if (build.isBuilding()) {
+                upcoming.add(build.getNumber());
+            } else {
+                missing.add(build);
+            }
+        }
+        int next = job.getNextBuildNumber();
+        VersionNameMatcher.Lookup lookup = matcher.forBuild(next);
+        if (find(byNumber.get(next), lookup) != null) {
+            prefixes.put(next, lookup.getPrefix());
+        } else {
+            upcoming.add(next);
+        }
+        if (prefixes.isEmpty()) {
+            if (!missing.isEmpty() || !upcoming.isEmpty()) {
+                problems.add(job.getFullName() + ": no version in " + target.getProjectKey()
+                        + " matches version prefix, names of " + (missing.size() + upcoming.size())
+                        + " missing versions are not known");
+            }
+            return;
+        }
+        for (AbstractBuild<?, ?> build : missing) {
+            String prefix = closest(prefixes, build.getNumber());
+            jobChanges.add(new Change(job, instanceName, target, build.getNumber(), Operation.CREATE_AND_RELEASE,
+                    prefix, prefix + build.getNumber(), null, build.getTimestamp()));
+        }
+        for (int number : upcoming) {
+            String prefix = closest(prefixes, number);
+            jobChanges.add(new Change(job, instanceName, target, number, Operation.CREATE, prefix, prefix + number,
+                    null, null));
+        }
+        Collections.sort(jobChanges, new Comparator<Change>() {
+            public int compare(Change a, Change b) {
+                return a.buildNumber < b.buildNumber ? -1 : a.buildNumber == b.buildNumber ? 0 : 1;
+            }
+        });
+        for (Change change : jobChanges) {
+            if (planned.add(change.instanceName + '/' + change.projectKey + '/' + change.versionName)) {
+                changes.add(change);
+            }
+        }
+    }
+
+    private static RemoteVersion find(List<RemoteVersion> candidates, VersionNameMatcher.Lookup lookup) {
+        if (candidates != null) {
+            for (RemoteVersion version : candidates) {
+                if (lookup.matches(version.getName())) {
+                    return version;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns prefix of version of the closest build, preferring later builds
+     * (prefix is changed for new builds, not for old ones).
+     */
+    private static String closest(TreeMap<Integer, String> prefixes, int number) {
+        Map.Entry<Integer, String> later = prefixes.ceilingEntry(number);
+        return later != null ? later.getValue() : prefixes.floorEntry(number).getValue();
+    }
+
+    /**
+     * Moves planned reconciliation to {@link State#APPLYING}, so it's applied
+     * only once.
+     * 
+     * @return {@code false} if changes are not planned yet, are already
+     *         applied or reconciliation was cancelled.
+     */
+    public synchronized boolean startApplying() {
+        if (state != State.PLANNED || cancelled) {
+            return false;
+        }
+        state = State.APPLYING;
+        started = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Applies planned changes, {@link Reconciliation#PARALLELISM} at once.
+     * Returns when all changes were applied (or skipped after
+     * {@link Reconciliation#cancel()}).
+     * 
+     * @throws InterruptedException
+     */
+    public void apply() throws InterruptedException {
+        if (state != State.APPLYING && !startApplying()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM, new JiraThreadFactory(
+                "JIRA reconciliation"));
+        try {
+            for (final Change change : getChanges()) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        if (!cancelled) {
+                            apply(change);
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            executor.shutdownNow();
+            finished = System.currentTimeMillis();
+            state = State.FINISHED;
+        }
+    }
+
+    private void apply(Change change) {
+        JiraSessionManager sessionManager = clients.get(change.instanceName);
+        if (sessionManager == null) {
+            fail(change, "No JIRA instance named " + change.instanceName);
+            return;
+        }
+        JiraUtil jiraUtil = new JiraUtil(sessionManager, change.projectKey, null);
+        try {
+            jiraUtil.connect();
+            boolean create = change.operation != Operation.RELEASE;
+            boolean release = change.operation != Operation.CREATE;
+            long createId = create ? begin(ReleaseJournal.Operation.CREATE, change) : -1;
+            long releaseId = release ? begin(ReleaseJournal.Operation.RELEASE, change) : -1;
+            RemoteVersion version = change.version;
+            if (create) {
+                version = jiraUtil.createVersion(change.versionName);
+                done(createId);
+            }
+            if (release) {
+                jiraUtil.releaseVersion(version, change.buildTime);
+                done(releaseId);
+                ReleaseResult result = new ReleaseResult(change.projectKey);
+                result.setReleased(version.getId(), version.getName(), change.prefix, change.buildTime.getTime());
+                ReleasedVersions.of(change.job).add(change.buildNumber, result);
+            }
+            applied.incrementAndGet();
+        } catch (JiraException e) {
+            fail(change, ReleaseTask.describe(e));
+        } finally {
+            try {
+                jiraUtil.disconnect();
+            } catch (JiraException e) {
+                LOG.log(Level.WARNING, "[JiraException] ", e);
+            }
+        }
+    }
+
+    private void fail(Change change, String error) {
+        LOG.log(Level.WARNING, "Reconciliation of version " + change.versionName + " in project "
+                + change.projectKey + " failed: " + error);
+        change.error = error;
+        failed.incrementAndGet();
+    }
+
+    private long begin(ReleaseJournal.Operation operation, Change change) {
+        ReleaseJournal journal = clients.getJournal();
+        return journal == null ? -1 : journal.begin(operation, change.instanceName, change.projectKey,
+                change.versionName);
+    }
+
+    private void done(long id) {
+        ReleaseJournal journal = clients.getJournal();
+        if (journal != null && id >= 0) {
+            journal.done(id);
+        }
+    }
+
+    /**
+     * Change of single version, needed by single build.
+     */
+    public static final class Change {
+        private final AbstractProject<?, ?> job;
+        private final String instanceName;
+        private final String projectKey;
+        private final int buildNumber;
+        private final Operation operation;
+        private final String prefix;
+        private final String versionName;
+        /** Existing version, {@code null} if it's created. */
+        private final RemoteVersion version;
+        /** Time of the build, {@code null} if version is not released. */
+        private final Calendar buildTime;
+        private volatile String error;
+
+        Change(AbstractProject<?, ?> job, String instanceName, ReleaseTarget target, int buildNumber,
+                Operation operation, String prefix, String versionName, RemoteVersion version, Calendar buildTime) {
+            this.job = job;
+            this.instanceName = instanceName;
+            this.projectKey = target.getProjectKey();
+            this.buildNumber = buildNumber;
+            this.operation = operation;
+            this.prefix = prefix;
+            this.versionName = versionName;
+            this.version = version;
+            this.buildTime = buildTime;
+        }
+
+        public String getJobName() {
+            return job.getFullName();
+        }
+
+        public String getProjectKey() {
+            return projectKey;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public String getVersionName() {
+            return versionName;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
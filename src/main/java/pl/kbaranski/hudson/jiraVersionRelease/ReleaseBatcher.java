@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Groups release requests of single JIRA project that arrive at about the
+ * same time (e.g. from configurations of a matrix job) into one batch.
+ * Requests that arrive while a batch of the project is running wait for it to
+ * finish and are then handled one after another with one download of the
+ * project versions. A request that does not overlap with others runs right
+ * away. Each caller gets result of its own request.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class ReleaseBatcher {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(ReleaseBatcher.class.getName());
+
+    /**
+     * Additional time (in milliseconds) first request of a batch waits for
+     * others. By default requests are batched only when they overlap with a
+     * running batch. Negative value disables batching.
+     */
+    public static final long WINDOW = Long.getLong(ReleaseBatcher.class.getName() + ".window", 0L);
+
+    /** Registry of JIRA clients. */
+    private final JiraClientRegistry clients;
+
+    /** Name of JIRA instance. */
+    private final String instanceName;
+
+    /** Key of JIRA project. */
+    private final String projectKey;
+
+    /** Requests waiting for the current batch to start. */
+    private List<Request> pending = new ArrayList<Request>();
+
+    /** Lock that makes batches of the project run one after another. */
+    private final Object runLock = new Object();
+
+    /** Single request waiting for its result. */
+    private static final class Request {
+        private final ReleaseTask task;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private ReleaseResult result;
+
+        Request(ReleaseTask task) {
+            this.task = task;
+        }
+
+        void complete(ReleaseResult result) {
+            this.result = result;
+            done.countDown();
+        }
+    }
+
+    public ReleaseBatcher(JiraClientRegistry clients, String instanceName, String projectKey) {
+        this.clients = clients;
+        this.instanceName = instanceName;
+        this.projectKey = projectKey;
+    }
+
+    /**
+     * Runs {@code task} as a part of a batch and waits for its result.
+     * 
+     * @param task
+     *            Release of version of the project.
+     * @return Result of {@code task}.
+     * @throws InterruptedException
+     *             If waiting for the result was interrupted.
+     */
+    public ReleaseResult release(ReleaseTask task) throws InterruptedException {
+        if (WINDOW < 0) {
+            return task.call();
+        }
+        Request request = new Request(task);
+        boolean leader;
+        synchronized (this) {
+            pending.add(request);
+            leader = pending.size() == 1;
+        }
+        if (leader) {
+            try {
+                if (WINDOW > 0) {
+                    Thread.sleep(WINDOW);
+                }
+            } finally {
+                run();
+            }
+        }
+        request.done.await();
+        return request.result;
+    }
+
+    /**
+     * Waits for previous batch of the project to finish, then downloads
+     * versions of the project once and runs all requests collected so far with
+     * them. Single request downloads only what it needs.
+     */
+    private void run() {
+        synchronized (runLock) {
+            List<Request> batch;
+            synchronized (this) {
+                batch = pending;
+                pending = new ArrayList<Request>();
+            }
+            List<RemoteVersion> versions = null;
+            String error = null;
+            JiraSessionManager sessionManager = clients.get(instanceName);
+            if (sessionManager != null && batch.size() > 1) {
+                JiraUtil jiraUtil = new JiraUtil(sessionManager, projectKey, null);
+                try {
+                    jiraUtil.connect();
+                    RemoteVersion[] fetched = jiraUtil.fetchVersions();
+                    if (fetched != null) {
+                        versions = new ArrayList<RemoteVersion>(Arrays.asList(fetched));
+                    }
+                } catch (JiraException e) {
+                    error = ReleaseTask.describe(e);
+                } finally {
+                    try {
+                        jiraUtil.disconnect();
+                    } catch (JiraException e) {
+                        LOG.log(Level.WARNING, "[JiraException] ", e);
+                    }
+                }
+                LOG.log(Level.FINE, batch.size() + " releases in project " + projectKey + " share one batch");
+            }
+            for (Request request : batch) {
+                if (error != null) {
+                    ReleaseResult result = new ReleaseResult(projectKey);
+                    result.setError(error);
+                    request.complete(result);
+                    continue;
+                }
+                try {
+                    request.complete(request.task.call(versions));
+                } catch (RuntimeException e) {
+                    ReleaseResult result = new ReleaseResult(projectKey);
+                    result.setError(e.toString());
+                    request.complete(result);
+                }
+            }
+        }
+    }
+}
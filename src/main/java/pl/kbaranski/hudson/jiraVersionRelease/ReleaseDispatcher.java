@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs JIRA operations of single {@link TrackerInstance} in the background,
+ * so builds do not have to wait for JIRA. Operations are run one by one in
+ * order of submission (version created for build N must exist before build
+ * N+1 is released). Queue is bounded; when it's full, submission is rejected
+ * and caller should do the work by itself.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class ReleaseDispatcher {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(ReleaseDispatcher.class.getName());
+
+    /** Maximum number of operations waiting in the queue. */
+    public static final int QUEUE_SIZE = Integer.getInteger(ReleaseDispatcher.class.getName() + ".queueSize", 100);
+
+    /** Executor with single thread and bounded queue. */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Operation waiting in dispatcher queue. Remembers when it was queued, so
+     * age of the queue can be reported.
+     */
+    private static final class QueuedOperation implements Runnable {
+        private final Runnable operation;
+        private final long queued = System.currentTimeMillis();
+
+        QueuedOperation(Runnable operation) {
+            this.operation = operation;
+        }
+
+        public void run() {
+            try {
+                operation.run();
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "Background JIRA operation failed", e);
+            }
+        }
+    }
+
+    /**
+     * Creates dispatcher.
+     * 
+     * @param instanceName
+     *            Name of JIRA instance, used to name worker thread.
+     */
+    public ReleaseDispatcher(String instanceName) {
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                QUEUE_SIZE), new JiraThreadFactory("JIRA dispatcher [" + instanceName + "]"));
+    }
+
+    /**
+     * Queues {@code operation} for execution in the background.
+     * 
+     * @param operation
+     *            Operation to run.
+     * @return {@code false} if queue is full or dispatcher was shut down.
+     */
+    public boolean submit(Runnable operation) {
+        try {
+            executor.execute(new QueuedOperation(operation));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns number of operations waiting in the queue (not counting the one
+     * being run).
+     * 
+     * @return Queue depth.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns how long the oldest operation has been waiting in the queue.
+     * 
+     * @return Age of the oldest queued operation in milliseconds, {@code 0} if
+     *         queue is empty.
+     */
+    public long getQueueAge() {
+        Runnable oldest = executor.getQueue().peek();
+        if (oldest instanceof QueuedOperation) {
+            return System.currentTimeMillis() - ((QueuedOperation) oldest).queued;
+        }
+        return 0;
+    }
+
+    /**
+     * Stops accepting new operations. Already queued ones are still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Stops accepting new operations and waits (for limited time) until queued
+     * ones are run.
+     * 
+     * @param timeout
+     *            Maximum time to wait in milliseconds.
+     */
+    public void shutdownAndWait(long timeout) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                LOG.log(Level.WARNING, getQueueDepth() + " background JIRA operations were not run");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
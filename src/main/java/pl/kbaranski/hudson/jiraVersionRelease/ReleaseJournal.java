@@ -0,0 +1,332 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of JIRA operations, kept in Hudson / Jenkins home
+ * directory. Each operation is recorded before it's sent to JIRA and marked as
+ * done afterwards, so operations interrupted by restart or JIRA outage can be
+ * replayed later. Only records of new operations are forced to disk; lost
+ * "done" record means the operation is replayed and skipped after checking
+ * JIRA. When most of the records describe finished operations, the journal is
+ * rewritten with pending ones only.
+ * 
+ * <p>
+ * Record format (one per line, fields separated with tab):
+ * 
+ * <pre>
+ * B id time operation instance project version
+ * D id
+ * </pre>
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class ReleaseJournal {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(ReleaseJournal.class.getName());
+
+    /** Number of records after which compaction is considered. */
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    /**
+     * Time (in milliseconds) after which pending operation is dropped instead
+     * of being replayed again.
+     */
+    public static final long MAX_AGE = Long.getLong(ReleaseJournal.class.getName() + ".maxAge",
+            7 * 24 * 60 * 60 * 1000L);
+
+    /** JIRA operation recorded in the journal. */
+    public enum Operation {
+        /** Release of existing version. */
+        RELEASE,
+        /** Creation of new version. */
+        CREATE
+    }
+
+    /** Single operation recorded in the journal. */
+    public static final class Entry {
+        private final long id;
+        private final long time;
+        private final Operation operation;
+        private final String instanceName;
+        private final String projectKey;
+        private final String versionName;
+
+        Entry(long id, long time, Operation operation, String instanceName, String projectKey, String versionName) {
+            this.id = id;
+            this.time = time;
+            this.operation = operation;
+            this.instanceName = instanceName;
+            this.projectKey = projectKey;
+            this.versionName = versionName;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public String getInstanceName() {
+            return instanceName;
+        }
+
+        public String getProjectKey() {
+            return projectKey;
+        }
+
+        public String getVersionName() {
+            return versionName;
+        }
+    }
+
+    /** Journal file. */
+    private final File file;
+
+    /** Stream appending records to the journal file. */
+    private FileOutputStream out;
+
+    /** Operations not marked as done, in order of recording. */
+    private final Map<Long, Entry> pending = new LinkedHashMap<Long, Entry>();
+
+    /** Identifier of the next recorded operation. */
+    private long nextId = 1;
+
+    /** Number of records in the journal file. */
+    private int records;
+
+    /**
+     * Opens journal, reading operations which are still pending.
+     * 
+     * @param file
+     *            Journal file; created if it does not exist.
+     * @throws IOException
+     */
+    public ReleaseJournal(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            load();
+        }
+        out = new FileOutputStream(file, true);
+    }
+
+    /**
+     * Records operation that is about to be sent to JIRA.
+     * 
+     * @return Identifier of the operation to be passed to
+     *         {@link ReleaseJournal#done(long)}; {@code -1} if it could not be
+     *         recorded.
+     */
+    public synchronized long begin(Operation operation, String instanceName, String projectKey, String versionName) {
+        Entry entry = new Entry(nextId++, System.currentTimeMillis(), operation, instanceName, projectKey,
+                versionName);
+        try {
+            append("B\t" + entry.id + '\t' + entry.time + '\t' + operation + '\t' + escape(instanceName) + '\t'
+                    + escape(projectKey) + '\t' + escape(versionName) + '\n');
+            out.getChannel().force(false);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to record JIRA operation in " + file, e);
+            return -1;
+        }
+        pending.put(entry.id, entry);
+        return entry.id;
+    }
+
+    /**
+     * Marks operation as done.
+     * 
+     * @param id
+     *            Identifier returned by {@link ReleaseJournal#begin}.
+     */
+    public synchronized void done(long id) {
+        if (pending.remove(id) == null) {
+            return;
+        }
+        try {
+            append("D\t" + id + '\n');
+            if (records > COMPACT_THRESHOLD && pending.size() * 2 < records) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to record JIRA operation in " + file, e);
+        }
+    }
+
+    /**
+     * Returns operations that were recorded but not marked as done.
+     * 
+     * @return Pending operations in order of recording.
+     */
+    public synchronized List<Entry> getPending() {
+        return new ArrayList<Entry>(pending.values());
+    }
+
+    /**
+     * Closes journal file.
+     */
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to close " + file, e);
+        }
+    }
+
+    private void append(String record) throws IOException {
+        out.write(record.getBytes("UTF-8"));
+        records++;
+    }
+
+    private void load() throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                records++;
+                String[] fields = line.split("\t", -1);
+                try {
+                    long id = Long.parseLong(fields[1]);
+                    nextId = Math.max(nextId, id + 1);
+                    if ("B".equals(fields[0]) && fields.length == 7) {
+                        pending.put(id, new Entry(id, Long.parseLong(fields[2]), Operation.valueOf(fields[3]),
+                                unescape(fields[4]), unescape(fields[5]), unescape(fields[6])));
+                    } else if ("D".equals(fields[0])) {
+                        pending.remove(id);
+                    }
+                } catch (RuntimeException e) {
+                    // Niedokonczony zapis (np. po awarii) - pomijamy
+                    LOG.log(Level.WARNING, "Skipping damaged record in " + file + ": " + line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        long oldest = System.currentTimeMillis() - MAX_AGE;
+        for (Entry entry : new ArrayList<Entry>(pending.values())) {
+            if (entry.time < oldest) {
+                LOG.log(Level.WARNING, "Dropping JIRA operation " + entry.operation + " " + entry.versionName
+                        + " recorded at " + new java.util.Date(entry.time));
+                pending.remove(entry.id);
+            }
+        }
+        compact();
+    }
+
+    /**
+     * Rewrites journal file so it contains pending operations only. If the
+     * file can't be replaced, the old one is kept and records are appended to
+     * it as before.
+     */
+    private void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream tmpOut = new FileOutputStream(tmp);
+        boolean written = false;
+        try {
+            Writer w = new OutputStreamWriter(tmpOut, "UTF-8");
+            for (Entry entry : pending.values()) {
+                w.write("B\t" + entry.id + '\t' + entry.time + '\t' + entry.operation + '\t'
+                        + escape(entry.instanceName) + '\t' + escape(entry.projectKey) + '\t'
+                        + escape(entry.versionName) + '\n');
+            }
+            w.flush();
+            tmpOut.getChannel().force(false);
+            written = true;
+        } finally {
+            tmpOut.close();
+            if (!written) {
+                tmp.delete();
+            }
+        }
+        // Otwartego pliku nie mozna zastapic na Windows
+        if (out != null) {
+            out.close();
+        }
+        try {
+            if (!replace(tmp, file)) {
+                throw new IOException("Failed to replace " + file + " with " + tmp);
+            }
+            records = pending.size();
+        } finally {
+            tmp.delete();
+            if (out != null) {
+                out = new FileOutputStream(file, true);
+            }
+        }
+    }
+
+    /**
+     * Replaces {@code target} with {@code source}; {@code target} is left as
+     * it was when it can't be replaced.
+     */
+    private static boolean replace(File source, File target) {
+        if (source.renameTo(target)) {
+            return true;
+        }
+        // Na Windows renameTo nie nadpisuje istniejacego pliku
+        File old = new File(target.getPath() + ".old");
+        old.delete();
+        if (!target.renameTo(old)) {
+            return false;
+        }
+        if (source.renameTo(target)) {
+            old.delete();
+            return true;
+        }
+        old.renameTo(target);
+        return false;
+    }
+
+    static String escape(String s) {
+        if (s == null) {
+            return "";
+        }
+        return s.replace("%", "%25").replace("\t", "%09").replace("\n", "%0A").replace("\r", "%0D");
+    }
+
+    static String unescape(String s) {
+        return s.replace("%0D", "\r").replace("%0A", "\n").replace("%09", "\t").replace("%25", "%");
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import hudson.Util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteIssue;
+
+/**
+ * Writes list of issues fixed in released JIRA version to text or HTML file.
+ * Issues are read from JIRA page by page and each page is written to the file
+ * before the next one is read, so memory used does not depend on number of
+ * issues in the version.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class ReleaseNotes {
+
+    /** Number of issues read from JIRA in single call. */
+    public static final int PAGE_SIZE = Integer.getInteger(ReleaseNotes.class.getName() + ".pageSize", 100);
+
+    /** Value of {@link JiraVersionReleasePublisher#getReleaseNotes()} for text file. */
+    public static final String TEXT = "text";
+
+    /** Value of {@link JiraVersionReleasePublisher#getReleaseNotes()} for HTML file. */
+    public static final String HTML = "html";
+
+    /** Registry of JIRA clients. */
+    private final JiraClientRegistry clients;
+
+    /** Name of JIRA instance. */
+    private final String instanceName;
+
+    /** Key of JIRA project. */
+    private final String projectKey;
+
+    /** Name of released version. */
+    private final String versionName;
+
+    /** Whether HTML (instead of text) file is written. */
+    private final boolean html;
+
+    public ReleaseNotes(JiraClientRegistry clients, String instanceName, String projectKey, String versionName,
+            String format) {
+        this.clients = clients;
+        this.instanceName = instanceName;
+        this.projectKey = projectKey;
+        this.versionName = versionName;
+        this.html = HTML.equals(format);
+    }
+
+    /**
+     * Returns name of file with release notes, e.g.
+     * {@code release-notes-PRJ-1.0.12.html}.
+     * 
+     * @return File name without characters not allowed in file names.
+     */
+    public String getFileName() {
+        return "release-notes-" + (projectKey + "-" + versionName).replaceAll("[^A-Za-z0-9._-]", "_")
+                + (html ? ".html" : ".txt");
+    }
+
+    /**
+     * Writes release notes to {@code dir}. When JIRA fails while file is
+     * written, incomplete file is removed.
+     * 
+     * @param dir
+     *            Directory of the file; created if it does not exist.
+     * @return Number of issues written.
+     * @throws JiraException
+     * @throws IOException
+     */
+    public int write(File dir) throws JiraException, IOException {
+        JiraSessionManager sessionManager = clients.get(instanceName);
+        if (sessionManager == null) {
+            throw new JiraException("No JIRA instance named " + instanceName);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory " + dir);
+        }
+        File file = new File(dir, getFileName());
+        JiraUtil jiraUtil = new JiraUtil(sessionManager, projectKey, null);
+        jiraUtil.connect();
+        boolean written = false;
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            String browseUrl = RestJiraClient.getBaseUrl(sessionManager.getTrackerInstance().getUrl())
+                    + "/browse/";
+            int count = 0;
+            header(out);
+            String afterKey = null;
+            for (;;) {
+                RemoteIssue[] page = jiraUtil.getFixedIssues(versionName, afterKey, PAGE_SIZE);
+                for (RemoteIssue issue : page) {
+                    issue(out, browseUrl, issue);
+                }
+                count += page.length;
+                // Strona niepelna lub JIRA zignorowala warunek na klucz
+                if (page.length < PAGE_SIZE || page[page.length - 1].getKey().equals(afterKey)) {
+                    break;
+                }
+                afterKey = page[page.length - 1].getKey();
+            }
+            footer(out, count);
+            written = true;
+            return count;
+        } finally {
+            jiraUtil.disconnect();
+            out.close();
+            if (!written) {
+                file.delete();
+            }
+        }
+    }
+
+    private void header(Writer out) throws IOException {
+        String title = projectKey + " " + versionName;
+        if (html) {
+            out.write("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>" + Util.xmlEscape(title)
+                    + "</title></head>\n<body>\n<h1>" + Util.xmlEscape(title) + "</h1>\n<ul>\n");
+        } else {
+            out.write(title + "\n\n");
+        }
+    }
+
+    private void issue(Writer out, String browseUrl, RemoteIssue issue) throws IOException {
+        String summary = issue.getSummary() == null ? "" : issue.getSummary();
+        if (html) {
+            out.write("<li><a href=\"" + Util.xmlEscape(browseUrl + issue.getKey()) + "\">"
+                    + Util.xmlEscape(issue.getKey()) + "</a> " + Util.xmlEscape(summary) + "</li>\n");
+        } else {
+            out.write(issue.getKey() + "\t" + summary.replace('\n', ' ') + "\n");
+        }
+    }
+
+    private void footer(Writer out, int count) throws IOException {
+        if (html) {
+            out.write("</ul>\n<p>" + count + " issues</p>\n</body></html>\n");
+        } else {
+            out.write("\n" + count + " issues\n");
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.io.PrintStream;
+import java.util.Date;
+
+/**
+ * Outcome of releasing JIRA version that matches single build and creating
+ * the next one.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class ReleaseResult {
+
+    /** Key of JIRA project. */
+    private final String projectKey;
+
+    /** Name of released version, {@code null} if nothing was released. */
+    private String releasedVersion;
+
+    /** JIRA id of released version, {@code null} if nothing was released. */
+    private String releasedVersionId;
+
+    /**
+     * Prefix of name of released version (name without build number),
+     * {@code null} if nothing was released.
+     */
+    private String versionPrefix;
+
+    /** Release date of released version, {@code null} if nothing was released. */
+    private Date releaseDate;
+
+    /**
+     * Whether version was released before (by earlier run for the same build
+     * number) and was only read from history of the job.
+     */
+    private boolean recorded;
+
+    /** Name of created version, {@code null} if nothing was created. */
+    private String createdVersion;
+
+    /**
+     * Name of version of the next build that already existed (was created
+     * ahead of time), {@code null} otherwise.
+     */
+    private String nextVersion;
+
+    /**
+     * Name of the last version which creation ahead of time was queued,
+     * {@code null} if versions are not created ahead of time.
+     */
+    private String queuedVersion;
+
+    /** Description of failure, {@code null} if there was none. */
+    private String error;
+
+    /** Time spent in JIRA operations, {@code null} if not measured. */
+    private String timing;
+
+    public ReleaseResult(String projectKey) {
+        this.projectKey = projectKey;
+    }
+
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    public String getReleasedVersion() {
+        return releasedVersion;
+    }
+
+    public String getReleasedVersionId() {
+        return releasedVersionId;
+    }
+
+    public String getVersionPrefix() {
+        return versionPrefix;
+    }
+
+    public Date getReleaseDate() {
+        return releaseDate;
+    }
+
+    public boolean isRecorded() {
+        return recorded;
+    }
+
+    /**
+     * Stores released version.
+     * 
+     * @param id
+     *            JIRA id of the version.
+     * @param name
+     *            Name of the version.
+     * @param prefix
+     *            Name of the version without build number.
+     * @param releaseDate
+     *            Release date of the version.
+     */
+    public void setReleased(String id, String name, String prefix, Date releaseDate) {
+        this.releasedVersionId = id;
+        this.releasedVersion = name;
+        this.versionPrefix = prefix;
+        this.releaseDate = releaseDate;
+    }
+
+    /**
+     * Stores version released before, found in history of the job.
+     * 
+     * @param released
+     *            Recorded release.
+     */
+    public void setRecorded(ReleasedVersions.Entry released) {
+        setReleased(released.getVersionId(), released.getVersionName(), released.getVersionPrefix(),
+                released.getReleaseDate());
+        this.recorded = true;
+    }
+
+    public String getCreatedVersion() {
+        return createdVersion;
+    }
+
+    public void setCreatedVersion(String createdVersion) {
+        this.createdVersion = createdVersion;
+    }
+
+    public String getNextVersion() {
+        return nextVersion;
+    }
+
+    public void setNextVersion(String nextVersion) {
+        this.nextVersion = nextVersion;
+    }
+
+    public String getQueuedVersion() {
+        return queuedVersion;
+    }
+
+    public void setQueuedVersion(String queuedVersion) {
+        this.queuedVersion = queuedVersion;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public String getTiming() {
+        return timing;
+    }
+
+    public void setTiming(String timing) {
+        this.timing = timing;
+    }
+
+    /**
+     * Checks whether version was released and the next one was created (or
+     * already existed), or version was released before for the same build
+     * number.
+     * 
+     * @return {@code true} on success.
+     */
+    public boolean isSuccess() {
+        return error == null && releasedVersion != null
+                && (createdVersion != null || nextVersion != null || recorded);
+    }
+
+    /**
+     * Prints result to build log.
+     * 
+     * @param logger
+     *            Build log.
+     */
+    public void print(PrintStream logger) {
+        if (recorded) {
+            logger.println("JIRA: Wersja " + releasedVersion + " w projekcie " + projectKey
+                    + " zostala wydana wczesniej dla tego numeru kompilacji");
+        } else if (releasedVersion != null) {
+            logger.println("JIRA: Wydano wersje " + releasedVersion + " w projekcie " + projectKey);
+        }
+        if (createdVersion != null) {
+            logger.println("JIRA: Utworzono wersje " + createdVersion + " w projekcie " + projectKey);
+        }
+        if (nextVersion != null) {
+            logger.println("JIRA: Wersja " + nextVersion + " w projekcie " + projectKey
+                    + " zostala utworzona wczesniej");
+        }
+        if (queuedVersion != null) {
+            logger.println("JIRA: Kolejne wersje (do " + queuedVersion + ") zostana utworzone w tle w projekcie "
+                    + projectKey);
+        }
+        if (error != null) {
+            logger.println("JIRA: Blad w projekcie " + projectKey + ": " + error);
+        } else if (releasedVersion == null) {
+            logger.println("JIRA: W JIRA nie odnaleziono wersji odpowiadającej biezacemu numerowi kopilacji");
+        }
+        if (timing != null && timing.length() > 0) {
+            logger.println("JIRA: Czas operacji: " + timing);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.PatternSyntaxException;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * JIRA project in which {@link JiraVersionReleasePublisher} releases version
+ * of the build, together with version name schema used in that project.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class ReleaseTarget {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(ReleaseTarget.class.getName());
+
+    /** Key that specifies project in JIRA. */
+    private final String projectKey;
+
+    /** Regular expression that defines version name schema in JIRA. */
+    private final String prefixRegexp;
+
+    /** Compiled {@link ReleaseTarget#prefixRegexp}. */
+    private transient VersionNameMatcher versionNameMatcher;
+
+    @DataBoundConstructor
+    public ReleaseTarget(String projectKey, String prefixRegexp) {
+        this.projectKey = projectKey;
+        this.prefixRegexp = prefixRegexp;
+        this.versionNameMatcher = new VersionNameMatcher(prefixRegexp);
+    }
+
+    ReleaseTarget(String projectKey, String prefixRegexp, VersionNameMatcher versionNameMatcher) {
+        this.projectKey = projectKey;
+        this.prefixRegexp = prefixRegexp;
+        this.versionNameMatcher = versionNameMatcher;
+    }
+
+    /**
+     * Compiles regular expression after configuration is loaded from disk.
+     * 
+     * @return This object.
+     */
+    protected Object readResolve() {
+        try {
+            versionNameMatcher = new VersionNameMatcher(prefixRegexp);
+        } catch (PatternSyntaxException e) {
+            LOG.log(Level.SEVERE, "Invalid version prefix regular expression: " + prefixRegexp, e);
+        }
+        return this;
+    }
+
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    public String getPrefixRegexp() {
+        return prefixRegexp;
+    }
+
+    /**
+     * Returns compiled version name schema.
+     * 
+     * @return Version name matcher or {@code null} if
+     *         {@link ReleaseTarget#prefixRegexp} is not valid.
+     */
+    public VersionNameMatcher getVersionNameMatcher() {
+        return versionNameMatcher;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Releases JIRA version that matches single build and creates version for the
+ * next build. May be run on the build executor thread or by
+ * {@link ReleaseDispatcher} in the background. JIRA instance is looked up when
+ * task is run, so tasks queued before configuration change use current
+ * connection data.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class ReleaseTask implements Callable<ReleaseResult> {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(ReleaseTask.class.getName());
+
+    /** Registry of JIRA clients. */
+    private final JiraClientRegistry clients;
+
+    /** Name of JIRA instance. */
+    private final String instanceName;
+
+    /** Key of JIRA project. */
+    private final String projectKey;
+
+    /** Compiled version name schema. */
+    private final VersionNameMatcher versionNameMatcher;
+
+    /** Number of Hudson / Jenkins build. */
+    private final int buildNumber;
+
+    /**
+     * Number of versions of the next builds kept created ahead of time;
+     * {@code 0} if the next version is created right after release. Version
+     * of the next build is always created right after release when it does
+     * not exist yet; only the further ones are created in the background.
+     */
+    private final int lookahead;
+
+    /**
+     * Versions released by builds of the job, {@code null} if releases are
+     * not recorded.
+     */
+    private final ReleasedVersions releasedVersions;
+
+    public ReleaseTask(JiraClientRegistry clients, String instanceName, String projectKey,
+            VersionNameMatcher versionNameMatcher, int buildNumber) {
+        this(clients, instanceName, projectKey, versionNameMatcher, buildNumber, 0);
+    }
+
+    public ReleaseTask(JiraClientRegistry clients, String instanceName, String projectKey,
+            VersionNameMatcher versionNameMatcher, int buildNumber, int lookahead) {
+        this(clients, instanceName, projectKey, versionNameMatcher, buildNumber, lookahead, null);
+    }
+
+    public ReleaseTask(JiraClientRegistry clients, String instanceName, String projectKey,
+            VersionNameMatcher versionNameMatcher, int buildNumber, int lookahead, ReleasedVersions releasedVersions) {
+        this.clients = clients;
+        this.instanceName = instanceName;
+        this.projectKey = projectKey;
+        this.versionNameMatcher = versionNameMatcher;
+        this.buildNumber = buildNumber;
+        this.lookahead = lookahead;
+        this.releasedVersions = releasedVersions;
+    }
+
+    public String getInstanceName() {
+        return instanceName;
+    }
+
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    /**
+     * Releases version and creates the next one. Never throws; failures are
+     * described by returned result.
+     * 
+     * @return Result of the task.
+     */
+    public ReleaseResult call() {
+        return call(null);
+    }
+
+    /**
+     * Releases version and creates the next one, looking for the version among
+     * {@code versions} downloaded before. When version of the build number was
+     * already released and recorded in history of the job, JIRA is not called
+     * at all. Never throws; failures are described by returned result.
+     * 
+     * @param versions
+     *            All versions of the project or {@code null} if they should be
+     *            downloaded. Versions released and created by the task are
+     *            updated in the list.
+     * @return Result of the task.
+     */
+    public ReleaseResult call(List<RemoteVersion> versions) {
+        ReleaseResult result = new ReleaseResult(projectKey);
+        ReleasedVersions.Entry released = releasedVersions == null ? null : releasedVersions.get(buildNumber,
+                projectKey);
+        if (released != null) {
+            result.setRecorded(released);
+            return result;
+        }
+        JiraSessionManager sessionManager = clients.get(instanceName);
+        if (sessionManager == null) {
+            result.setError("Nie zdefiniowano instancji JIRA o nazwie " + instanceName);
+            return result;
+        }
+        JiraUtil jiraUtil = new JiraUtil(sessionManager, projectKey, versionNameMatcher);
+        jiraUtil.useVersions(versions);
+        try {
+            jiraUtil.connect();
+            RemoteVersion version = jiraUtil.getVersion(buildNumber);
+            if (version == null) {
+                return result;
+            }
+            String prefix = jiraUtil.getJiraVersionNamePrefix();
+            String newVersionFullName = prefix + (buildNumber + 1);
+            // Kolejna kompilacja moze sie zaczac przed utworzeniem wersji w
+            // tle, wiec jej wersje tworzymy od razu, jesli jeszcze nie istnieje
+            boolean createNext = lookahead <= 0 || !nextExists(jiraUtil, sessionManager, prefix);
+            // Obie operacje zapisujemy przed wyslaniem, zeby po restarcie
+            // mozna je bylo powtorzyc.
+            long releaseId = begin(ReleaseJournal.Operation.RELEASE, version.getName());
+            long createId = createNext ? begin(ReleaseJournal.Operation.CREATE, newVersionFullName) : -1;
+
+            jiraUtil.releaseVersion(version);
+            done(releaseId);
+            result.setReleased(version.getId(), version.getName(), prefix, version.getReleaseDate().getTime());
+            if (releasedVersions != null) {
+                releasedVersions.add(buildNumber, result);
+            }
+
+            if (createNext) {
+                // tworzymy nową wersję
+                jiraUtil.createVersion(newVersionFullName);
+                done(createId);
+                result.setCreatedVersion(newVersionFullName);
+            } else {
+                result.setNextVersion(newVersionFullName);
+            }
+            if (lookahead > 1) {
+                topUp(prefix, result);
+            }
+        } catch (JiraException e) {
+            LOG.log(Level.SEVERE, "[JiraException] ", e);
+            result.setError(describe(e));
+        } finally {
+            try {
+                jiraUtil.disconnect();
+            } catch (JiraException e) {
+                LOG.log(Level.WARNING, "[JiraException] ", e);
+            }
+            result.setTiming(jiraUtil.getTimingSummary());
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether version of the next build exists, or the next build
+     * already released its version. Version index (or versions downloaded
+     * for the batch) usually answers without calling JIRA.
+     */
+    private boolean nextExists(JiraUtil jiraUtil, JiraSessionManager sessionManager, String prefix)
+            throws JiraException {
+        if (sessionManager.getVersionIndex(projectKey).getLastReleased(prefix) > buildNumber) {
+            return true;
+        }
+        return jiraUtil.getVersion(buildNumber + 1) != null;
+    }
+
+    /**
+     * Queues creation of versions of builds after the next one, up to
+     * {@link ReleaseTask#lookahead} builds ahead, that do not exist yet. When
+     * the queue is full, versions are created right away.
+     */
+    private void topUp(String prefix, ReleaseResult result) {
+        VersionTopUp topUp = new VersionTopUp(clients, instanceName, projectKey, versionNameMatcher, prefix,
+                buildNumber + 2, buildNumber + lookahead);
+        result.setQueuedVersion(prefix + (buildNumber + lookahead));
+        if (!clients.getDispatcher(instanceName).submit(topUp)) {
+            LOG.log(Level.WARNING, "Queue of JIRA operations is full, creating versions of " + projectKey + " now");
+            topUp.run();
+        }
+    }
+
+    private long begin(ReleaseJournal.Operation operation, String versionName) {
+        ReleaseJournal journal = clients.getJournal();
+        return journal == null ? -1 : journal.begin(operation, instanceName, projectKey, versionName);
+    }
+
+    private void done(long id) {
+        ReleaseJournal journal = clients.getJournal();
+        if (journal != null && id >= 0) {
+            journal.done(id);
+        }
+    }
+
+    /**
+     * Returns message describing failure of JIRA operation.
+     * 
+     * @param e
+     *            Failure of JIRA operation.
+     * @return Message that may be shown to the user.
+     */
+    static String describe(JiraException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getName();
+    }
+}
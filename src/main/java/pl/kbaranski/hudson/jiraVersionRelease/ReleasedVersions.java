@@ -0,0 +1,272 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import hudson.model.AbstractProject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * JIRA versions released by builds of single job, by build number and JIRA
+ * project. Kept in small file in job directory, so version released by a
+ * build can be found without loading build records and without asking JIRA.
+ * File is read on the first lookup and again when it was changed or removed
+ * outside of this class; releases are appended to it.
+ * 
+ * <p>
+ * Record format (one per line, fields separated with tab):
+ * 
+ * <pre>
+ * build-number version-id prefix version-name release-time project-key
+ * </pre>
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class ReleasedVersions {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(ReleasedVersions.class.getName());
+
+    /** Name of file in job directory. */
+    public static final String FILE_NAME = "jiraReleasedVersions.txt";
+
+    /** Objects of jobs that were already used, by job directory. */
+    private static final ConcurrentMap<File, ReleasedVersions> JOBS = new ConcurrentHashMap<File, ReleasedVersions>();
+
+    /** File with records of releases. */
+    private final File file;
+
+    /** Releases by build number, {@code null} until file is read. */
+    private Map<Integer, List<Entry>> entries;
+
+    /** Length of the file when {@link ReleasedVersions#entries} were read. */
+    private long length;
+
+    /** Modification time of the file when {@link ReleasedVersions#entries} were read. */
+    private long lastModified;
+
+    ReleasedVersions(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns versions released by builds of {@code job}.
+     * 
+     * @param job
+     *            Hudson / Jenkins job.
+     * @return Released versions of the job.
+     */
+    public static ReleasedVersions of(AbstractProject<?, ?> job) {
+        File dir = job.getRootDir();
+        ReleasedVersions versions = JOBS.get(dir);
+        if (versions == null) {
+            ReleasedVersions created = new ReleasedVersions(new File(dir, FILE_NAME));
+            versions = JOBS.putIfAbsent(dir, created);
+            if (versions == null) {
+                versions = created;
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Forgets versions released by builds of job kept in {@code dir}, e.g.
+     * because the job was deleted or renamed.
+     * 
+     * @param dir
+     *            Job directory.
+     */
+    static void forget(File dir) {
+        JOBS.remove(dir);
+    }
+
+    /**
+     * Returns version released by build in JIRA project.
+     * 
+     * @param buildNumber
+     *            Number of Hudson / Jenkins build.
+     * @param projectKey
+     *            Key of JIRA project.
+     * @return Released version or {@code null} if the build did not release
+     *         any version in the project.
+     */
+    public synchronized Entry get(int buildNumber, String projectKey) {
+        // Plik mogl zostac usuniety lub zmieniony recznie
+        if (entries == null || file.length() != length || file.lastModified() != lastModified) {
+            entries = load();
+        }
+        List<Entry> released = entries.get(buildNumber);
+        if (released != null) {
+            for (Entry entry : released) {
+                if (entry.projectKey.equals(projectKey)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records version released by build.
+     * 
+     * @param buildNumber
+     *            Number of Hudson / Jenkins build.
+     * @param result
+     *            Result of release with released version set.
+     */
+    public synchronized void add(int buildNumber, ReleaseResult result) {
+        Entry entry = new Entry(buildNumber, result.getProjectKey(), result.getReleasedVersionId(),
+                result.getVersionPrefix(), result.getReleasedVersion(), result.getReleaseDate());
+        String record = buildNumber + "\t" + ReleaseJournal.escape(entry.versionId) + '\t'
+                + ReleaseJournal.escape(entry.versionPrefix) + '\t' + ReleaseJournal.escape(entry.versionName) + '\t'
+                + (entry.releaseDate == null ? 0 : entry.releaseDate.getTime()) + '\t'
+                + ReleaseJournal.escape(entry.projectKey) + '\n';
+        long expected = -1;
+        try {
+            byte[] bytes = record.getBytes("UTF-8");
+            FileOutputStream out = new FileOutputStream(file, true);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            expected = length + bytes.length;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to record released JIRA version in " + file, e);
+        }
+        if (entries == null) {
+            return;
+        }
+        if (file.length() == expected) {
+            put(entries, entry);
+            length = expected;
+            lastModified = file.lastModified();
+        } else {
+            // Plik zostal zmieniony w miedzyczasie, wczytamy go ponownie
+            entries = null;
+        }
+    }
+
+    private static void put(Map<Integer, List<Entry>> entries, Entry entry) {
+        List<Entry> released = entries.get(entry.buildNumber);
+        if (released == null) {
+            released = new ArrayList<Entry>(1);
+            entries.put(entry.buildNumber, released);
+        }
+        released.add(entry);
+    }
+
+    private Map<Integer, List<Entry>> load() {
+        Map<Integer, List<Entry>> loaded = new HashMap<Integer, List<Entry>>();
+        length = file.length();
+        lastModified = file.lastModified();
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    try {
+                        int number = Integer.parseInt(fields[0]);
+                        long time = Long.parseLong(fields[4]);
+                        put(loaded, new Entry(number, ReleaseJournal.unescape(fields[5]),
+                                ReleaseJournal.unescape(fields[1]), ReleaseJournal.unescape(fields[2]),
+                                ReleaseJournal.unescape(fields[3]), time == 0 ? null : new Date(time)));
+                    } catch (RuntimeException e) {
+                        // Niedokonczony zapis (np. po awarii) - pomijamy
+                        LOG.log(Level.WARNING, "Skipping damaged record in " + file + ": " + line);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            // Zadna kompilacja nie wydala jeszcze wersji
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to read released JIRA versions from " + file, e);
+        }
+        return loaded;
+    }
+
+    /**
+     * Version released by single build.
+     */
+    public static final class Entry {
+        private final int buildNumber;
+        private final String projectKey;
+        private final String versionId;
+        private final String versionPrefix;
+        private final String versionName;
+        private final Date releaseDate;
+
+        Entry(int buildNumber, String projectKey, String versionId, String versionPrefix, String versionName,
+                Date releaseDate) {
+            this.buildNumber = buildNumber;
+            this.projectKey = projectKey;
+            this.versionId = versionId;
+            this.versionPrefix = versionPrefix;
+            this.versionName = versionName;
+            this.releaseDate = releaseDate;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        public String getProjectKey() {
+            return projectKey;
+        }
+
+        public String getVersionId() {
+            return versionId;
+        }
+
+        public String getVersionPrefix() {
+            return versionPrefix;
+        }
+
+        public String getVersionName() {
+            return versionName;
+        }
+
+        public Date getReleaseDate() {
+            return releaseDate;
+        }
+    }
+}
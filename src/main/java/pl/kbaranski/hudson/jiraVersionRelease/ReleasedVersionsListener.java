@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+
+import java.io.File;
+
+/**
+ * Forgets versions released by builds of jobs that were deleted or renamed,
+ * so that a new job created in the same directory does not see releases of
+ * the old one.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ * @see ReleasedVersions
+ */
+@Extension
+public class ReleasedVersionsListener extends ItemListener {
+
+    @Override
+    public void onCreated(Item item) {
+        ReleasedVersions.forget(item.getRootDir());
+    }
+
+    @Override
+    public void onDeleted(Item item) {
+        ReleasedVersions.forget(item.getRootDir());
+    }
+
+    @Override
+    public void onRenamed(Item item, String oldName, String newName) {
+        File dir = item.getRootDir();
+        ReleasedVersions.forget(new File(dir.getParentFile(), oldName));
+        ReleasedVersions.forget(dir);
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.NameValuePair;
+import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteIssue;
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * {@link JiraClient} calling JIRA REST API (version 2). Session is opened with
+ * {@code /rest/auth/1/session} resource and its cookie is used as session
+ * token. List of versions is parsed straight from the response stream by
+ * {@link JsonVersionReader}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class RestJiraClient implements JiraClient {
+
+    /** Path of SOAP service, stripped from configured URL to get base URL. */
+    private static final String SOAP_PATH = "/rpc/soap/";
+
+    /** Content type of JSON requests. */
+    private static final String JSON = "application/json";
+
+    /** Base URL of JIRA, without trailing slash. */
+    private final String baseUrl;
+
+    /** HTTP client sharing connections of the JIRA instance. */
+    private final HttpClient httpClient;
+
+    /**
+     * Creates client of JIRA available under {@code url}.
+     * 
+     * @param url
+     *            Base URL of JIRA or URL of its SOAP service.
+     * @param connectionManager
+     *            Manager of HTTP connections to JIRA.
+     */
+    public RestJiraClient(URL url, HttpConnectionManager connectionManager) {
+        this.baseUrl = getBaseUrl(url);
+        this.httpClient = new HttpClient(connectionManager);
+    }
+
+    /**
+     * Returns base URL of JIRA. When {@code url} points to SOAP service
+     * ({@code .../rpc/soap/jirasoapservice-v2}), path of the service is
+     * removed.
+     * 
+     * @param url
+     *            Base URL of JIRA or URL of its SOAP service.
+     * @return Base URL without trailing slash.
+     */
+    static String getBaseUrl(URL url) {
+        String base = url.toExternalForm();
+        int soap = base.indexOf(SOAP_PATH);
+        if (soap >= 0) {
+            base = base.substring(0, soap);
+        }
+        while (base.endsWith("/")) {
+            base = base.substring(0, base.length() - 1);
+        }
+        return base;
+    }
+
+    public String login(String user, String pass) throws IOException {
+        JSONObject credentials = new JSONObject();
+        credentials.put("username", user);
+        credentials.put("password", pass);
+        PostMethod method = new PostMethod(baseUrl + "/rest/auth/1/session");
+        try {
+            JSONObject session = readObject(send(method, null, credentials)).getJSONObject("session");
+            return session.getString("name") + "=" + session.getString("value");
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    public RemoteVersion[] getVersions(String token, String projectKey) throws IOException {
+        GetMethod method = new GetMethod(baseUrl + "/rest/api/2/project/" + encode(projectKey) + "/versions");
+        try {
+            return new JsonVersionReader(reader(send(method, token, null))).readAll();
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    public void visitUnreleasedVersions(String token, String projectKey, VersionVisitor visitor) throws IOException {
+        GetMethod method = new GetMethod(baseUrl + "/rest/api/2/project/" + encode(projectKey) + "/versions");
+        try {
+            new JsonVersionReader(reader(send(method, token, null))).readUnreleased(visitor);
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    public void releaseVersion(String token, String projectKey, RemoteVersion version) throws IOException {
+        JSONObject update = new JSONObject();
+        update.put("released", Boolean.TRUE);
+        Calendar releaseDate = version.getReleaseDate() != null ? version.getReleaseDate() : Calendar.getInstance();
+        update.put("releaseDate", new SimpleDateFormat(JsonVersionReader.DATE_FORMAT).format(releaseDate.getTime()));
+        PutMethod method = new PutMethod(baseUrl + "/rest/api/2/version/" + encode(version.getId()));
+        try {
+            send(method, token, update);
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    public void archiveVersion(String token, String projectKey, RemoteVersion version) throws IOException {
+        JSONObject update = new JSONObject();
+        update.put("archived", Boolean.TRUE);
+        PutMethod method = new PutMethod(baseUrl + "/rest/api/2/version/" + encode(version.getId()));
+        try {
+            send(method, token, update);
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    public RemoteVersion addVersion(String token, String projectKey, RemoteVersion version) throws IOException {
+        JSONObject created = new JSONObject();
+        created.put("name", version.getName());
+        created.put("project", projectKey);
+        PostMethod method = new PostMethod(baseUrl + "/rest/api/2/version");
+        try {
+            return new JsonVersionReader(reader(send(method, token, created))).readVersion();
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    public RemoteIssue[] getFixedIssues(String token, String projectKey, String versionName, String afterKey,
+            int maxResults) throws IOException {
+        GetMethod method = new GetMethod(baseUrl + "/rest/api/2/search");
+        method.setQueryString(new NameValuePair[] {
+                new NameValuePair("jql", Jql.fixedIssues(projectKey, versionName, afterKey)),
+                new NameValuePair("maxResults", Integer.toString(maxResults)),
+                new NameValuePair("fields", "summary") });
+        try {
+            JSONArray found = readObject(send(method, token, null)).getJSONArray("issues");
+            RemoteIssue[] issues = new RemoteIssue[found.size()];
+            for (int i = 0; i < issues.length; i++) {
+                JSONObject issue = found.getJSONObject(i);
+                issues[i] = new RemoteIssue();
+                issues[i].setId(issue.optString("id", null));
+                issues[i].setKey(issue.getString("key"));
+                issues[i].setSummary(issue.getJSONObject("fields").optString("summary", null));
+            }
+            return issues;
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    public boolean logout(String token) throws IOException {
+        DeleteMethod method = new DeleteMethod(baseUrl + "/rest/auth/1/session");
+        try {
+            send(method, token, null);
+            return true;
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    /**
+     * Sends request to JIRA.
+     * 
+     * @param method
+     *            HTTP method with URL set.
+     * @param token
+     *            Session cookie or {@code null} if not logged in.
+     * @param body
+     *            Body of request or {@code null} if it has no body.
+     * @return Stream of response body; may be {@code null} if response has no
+     *         body.
+     * @throws JiraRestException
+     *             When JIRA responds with error status.
+     * @throws IOException
+     */
+    private InputStream send(HttpMethodBase method, String token, JSONObject body) throws IOException {
+        method.setRequestHeader("Accept", JSON);
+        if (token != null) {
+            method.setRequestHeader("Cookie", token);
+        }
+        if (body != null) {
+            StringRequestEntity entity = new StringRequestEntity(body.toString(), JSON, "UTF-8");
+            ((EntityEnclosingMethod) method).setRequestEntity(entity);
+            OperationMetrics.transferred(entity.getContentLength());
+        }
+        int status = httpClient.executeMethod(method);
+        OperationMetrics.transferred(method.getResponseContentLength());
+        if (status >= 300) {
+            throw new JiraRestException(status, method.getStatusText() + " " + method.getURI());
+        }
+        return method.getResponseBodyAsStream();
+    }
+
+    private static Reader reader(InputStream body) throws IOException {
+        if (body == null) {
+            throw new IOException("Empty response from JIRA");
+        }
+        return new BufferedReader(new InputStreamReader(body, "UTF-8"));
+    }
+
+    private static JSONObject readObject(InputStream body) throws IOException {
+        StringBuilder text = new StringBuilder();
+        Reader reader = reader(body);
+        char[] chunk = new char[1024];
+        for (int read; (read = reader.read(chunk)) > 0;) {
+            text.append(chunk, 0, read);
+        }
+        return JSONObject.fromObject(text.toString());
+    }
+
+    private static String encode(String pathSegment) throws IOException {
+        return URLEncoder.encode(pathSegment, "UTF-8").replace("+", "%20");
+    }
+}
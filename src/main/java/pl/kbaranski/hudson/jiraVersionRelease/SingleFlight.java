@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets identical JIRA calls made at the same time (e.g. by concurrent builds
+ * of jobs sharing JIRA project) share one call and its result. First caller
+ * of a key makes the call in its own thread, others wait for it. Calls are
+ * looked up in concurrent map, so no lock is held while calling JIRA and
+ * calls with different keys never wait for each other. Finished call is
+ * forgotten; the next one with the same key calls JIRA again.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class SingleFlight {
+
+    /** Single call to JIRA. */
+    public interface Call<V> {
+        V call() throws JiraException;
+    }
+
+    /** Calls in progress by key. */
+    private final ConcurrentMap<String, FutureTask<Object>> calls =
+            new ConcurrentHashMap<String, FutureTask<Object>>();
+
+    /** Number of callers that got result of call made by other caller. */
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * Makes {@code call} unless call with the same {@code key} is in progress;
+     * in that case waits for its result.
+     * 
+     * @param key
+     *            Identifies call, e.g. operation, project key and version name.
+     * @param call
+     *            Call to JIRA.
+     * @return Result of the call; the same object is returned to all callers
+     *         that shared the call.
+     * @throws JiraException
+     *             Thrown by the call (to all callers that shared it).
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V execute(String key, final Call<V> call) throws JiraException {
+        FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+            public Object call() throws JiraException {
+                return call.call();
+            }
+        });
+        FutureTask<Object> running = calls.putIfAbsent(key, task);
+        if (running == null) {
+            try {
+                task.run();
+            } finally {
+                calls.remove(key, task);
+            }
+            running = task;
+        } else {
+            shared.incrementAndGet();
+        }
+        try {
+            return (V) running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JiraException("Interrupted while waiting for the same JIRA call made by other build");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof JiraException) {
+                throw (JiraException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new JiraException(cause);
+        }
+    }
+
+    public long getShared() {
+        return shared.get();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.rmi.RemoteException;
+
+import org.apache.axis.AxisFault;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.JiraSoapService;
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteIssue;
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * {@link JiraClient} calling JIRA SOAP service through Axis generated stub.
+ * When created with connection manager, {@code getVersions} responses visited
+ * by {@link SoapJiraClient#visitUnreleasedVersions} are not processed by Axis,
+ * but sent directly and read by {@link SoapVersionReader}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class SoapJiraClient implements JiraClient {
+
+    /** Stub of JIRA SOAP service. */
+    private final JiraSoapService soapService;
+
+    /** URL of JIRA SOAP service; {@code null} if not called directly. */
+    private final URL url;
+
+    /** HTTP client used for direct calls; {@code null} if not called directly. */
+    private final HttpClient httpClient;
+
+    public SoapJiraClient(JiraSoapService soapService) {
+        this(soapService, null, null);
+    }
+
+    /**
+     * Creates client that reads versions from SOAP responses by itself.
+     * 
+     * @param soapService
+     *            Stub of JIRA SOAP service.
+     * @param url
+     *            URL of JIRA SOAP service.
+     * @param connectionManager
+     *            Manager of HTTP connections to JIRA.
+     */
+    public SoapJiraClient(JiraSoapService soapService, URL url, HttpConnectionManager connectionManager) {
+        this.soapService = soapService;
+        this.url = url;
+        this.httpClient = connectionManager == null ? null : new HttpClient(connectionManager);
+    }
+
+    public JiraSoapService getSoapService() {
+        return soapService;
+    }
+
+    public String login(String user, String pass) throws RemoteException {
+        return soapService.login(user, pass);
+    }
+
+    public RemoteVersion[] getVersions(String token, String projectKey) throws RemoteException {
+        return soapService.getVersions(token, projectKey);
+    }
+
+    public void visitUnreleasedVersions(String token, String projectKey, VersionVisitor visitor) throws IOException {
+        if (httpClient == null) {
+            for (RemoteVersion version : soapService.getVersions(token, projectKey)) {
+                if (!version.isReleased() && !version.isArchived() && !visitor.visit(version)) {
+                    return;
+                }
+            }
+            return;
+        }
+        PostMethod method = new PostMethod(url.toExternalForm());
+        method.setRequestHeader("SOAPAction", "\"\"");
+        StringRequestEntity entity = new StringRequestEntity(getVersionsRequest(token, projectKey), "text/xml",
+                "UTF-8");
+        method.setRequestEntity(entity);
+        try {
+            int status = httpClient.executeMethod(method);
+            OperationMetrics.transferred(entity.getContentLength() + Math.max(0, method.getResponseContentLength()));
+            InputStream body = method.getResponseBodyAsStream();
+            // Błędy SOAP są zwracane ze statusem 500
+            if (body != null && (status == 200 || status == 500)) {
+                new SoapVersionReader().readUnreleased(body, visitor);
+                if (status == 200) {
+                    return;
+                }
+            }
+            throw new AxisFault("HTTP", "(" + status + ")" + method.getStatusText(), null, null);
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    public void releaseVersion(String token, String projectKey, RemoteVersion version) throws RemoteException {
+        soapService.releaseVersion(token, projectKey, version);
+    }
+
+    public void archiveVersion(String token, String projectKey, RemoteVersion version) throws RemoteException {
+        soapService.archiveVersion(token, projectKey, version.getName(), true);
+    }
+
+    public RemoteVersion addVersion(String token, String projectKey, RemoteVersion version) throws RemoteException {
+        return soapService.addVersion(token, projectKey, version);
+    }
+
+    public RemoteIssue[] getFixedIssues(String token, String projectKey, String versionName, String afterKey,
+            int maxResults) throws RemoteException {
+        RemoteIssue[] issues = soapService.getIssuesFromJqlSearch(token,
+                Jql.fixedIssues(projectKey, versionName, afterKey), maxResults);
+        return issues == null ? new RemoteIssue[0] : issues;
+    }
+
+    public boolean logout(String token) throws RemoteException {
+        return soapService.logout(token);
+    }
+
+    /**
+     * Builds SOAP envelope of {@code getVersions} call, the same as Axis
+     * sends.
+     */
+    private static String getVersionsRequest(String token, String projectKey) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\""
+                + " xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"><soapenv:Body>"
+                + "<ns1:getVersions soapenv:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\""
+                + " xmlns:ns1=\"http://soap.rpc.jira.atlassian.com\">"
+                + "<in0 xsi:type=\"xsd:string\">" + escape(token) + "</in0>"
+                + "<in1 xsi:type=\"xsd:string\">" + escape(projectKey) + "</in1>"
+                + "</ns1:getVersions></soapenv:Body></soapenv:Envelope>";
+    }
+
+    private static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '<':
+                escaped.append("&lt;");
+                break;
+            case '>':
+                escaped.append("&gt;");
+                break;
+            case '&':
+                escaped.append("&amp;");
+                break;
+            case '"':
+                escaped.append("&quot;");
+                break;
+            default:
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
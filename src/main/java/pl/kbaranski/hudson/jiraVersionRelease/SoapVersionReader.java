@@ -0,0 +1,211 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.axis.AxisFault;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Streaming (StAX) reader of response of JIRA SOAP {@code getVersions}
+ * operation. Unlike Axis, which builds DOM of the whole response and then
+ * deserializes all versions, this reader goes through the response once and
+ * creates {@link RemoteVersion} objects only for versions that are neither
+ * released nor archived. Reading stops as soon as visitor asks for it.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class SoapVersionReader {
+
+    /** Namespace of SOAP envelope. */
+    private static final String SOAP_ENVELOPE = "http://schemas.xmlsoap.org/soap/envelope/";
+
+    /** Namespace of XML Schema instance attributes. */
+    private static final String XSI = "http://www.w3.org/2001/XMLSchema-instance";
+
+    /** Factory of StAX readers; thread safe once configured. */
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    }
+
+    /** Parser of {@code xsd:dateTime} values, created on first use. */
+    private DatatypeFactory datatypeFactory;
+
+    /**
+     * Reads versions from {@code getVersions} response and passes not
+     * released (and not archived) ones to {@code visitor}.
+     * 
+     * @param in
+     *            Body of SOAP response.
+     * @param visitor
+     *            Receiver of versions.
+     * @return {@code false} if {@code visitor} stopped reading, {@code true}
+     *         if the whole response was read.
+     * @throws AxisFault
+     *             When response contains SOAP fault.
+     * @throws IOException
+     *             On read error or malformed response.
+     */
+    public boolean readUnreleased(InputStream in, VersionVisitor visitor) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if ("Fault".equals(reader.getLocalName()) && SOAP_ENVELOPE.equals(reader.getNamespaceURI())) {
+                    throw readFault(reader);
+                }
+                String type = reader.getAttributeValue(XSI, "type");
+                if (type != null && (type.equals("RemoteVersion") || type.endsWith(":RemoteVersion"))) {
+                    if (!readVersion(reader, visitor)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed SOAP response: " + e.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Strumień i tak jest zamykany przez wywołującego
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads fields of single version. Object is created only if version is
+     * not released nor archived.
+     * 
+     * @return Value returned by {@code visitor} or {@code true} if version was
+     *         skipped.
+     */
+    private boolean readVersion(XMLStreamReader reader, VersionVisitor visitor) throws XMLStreamException,
+            IOException {
+        String id = null;
+        String name = null;
+        String releaseDate = null;
+        String sequence = null;
+        boolean released = false;
+        boolean archived = false;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String field = reader.getLocalName();
+            boolean nil = "true".equals(reader.getAttributeValue(XSI, "nil"));
+            if ("id".equals(field)) {
+                id = nil ? null : reader.getElementText();
+            } else if ("name".equals(field)) {
+                name = nil ? null : reader.getElementText();
+            } else if ("released".equals(field)) {
+                released = "true".equals(reader.getElementText().trim());
+            } else if ("archived".equals(field)) {
+                archived = "true".equals(reader.getElementText().trim());
+            } else if ("releaseDate".equals(field)) {
+                releaseDate = nil ? null : reader.getElementText().trim();
+            } else if ("sequence".equals(field)) {
+                sequence = nil ? null : reader.getElementText().trim();
+            } else {
+                skipElement(reader);
+            }
+            if (nil && reader.isStartElement()) {
+                skipElement(reader);
+            }
+        }
+        if (released || archived) {
+            return true;
+        }
+        RemoteVersion version = new RemoteVersion(id, name, false, null, false, null);
+        if (releaseDate != null && releaseDate.length() > 0) {
+            version.setReleaseDate(getDatatypeFactory().newXMLGregorianCalendar(releaseDate).toGregorianCalendar());
+        }
+        if (sequence != null && sequence.length() > 0) {
+            version.setSequence(Long.valueOf(sequence));
+        }
+        return visitor.visit(version);
+    }
+
+    /**
+     * Reads SOAP fault, so it may be reported in the same way as Axis reports
+     * it.
+     */
+    private static AxisFault readFault(XMLStreamReader reader) throws XMLStreamException {
+        String faultString = null;
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if ("faultstring".equals(reader.getLocalName())) {
+                    faultString = reader.getElementText();
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        return new AxisFault(faultString);
+    }
+
+    /** Skips current element together with its content. */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private DatatypeFactory getDatatypeFactory() throws IOException {
+        if (datatypeFactory == null) {
+            try {
+                datatypeFactory = DatatypeFactory.newInstance();
+            } catch (DatatypeConfigurationException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+        return datatypeFactory;
+    }
+}
@@ -49,13 +49,59 @@ public class TrackerInstance {
     private String user;
     /** Password to the account of the user specified in {@code user}. */
     private String pass;
+    /**
+     * Maximum number of HTTP connections kept open to JIRA; {@code 0} means
+     * default.
+     */
+    private int maxConnections;
+    /** Connect timeout in seconds; {@code 0} means default. */
+    private int connectTimeout;
+    /** Read timeout in seconds; {@code 0} means default. */
+    private int readTimeout;
+    /**
+     * Time in seconds after which unused HTTP connection is closed; {@code 0}
+     * means default.
+     */
+    private int idleTimeout;
+    /**
+     * Whether JIRA REST API should be used instead of SOAP service.
+     * 
+     * @since 1.2
+     */
+    private boolean useRest;
+    /**
+     * Maximum number of calls to JIRA per second, shared by all jobs;
+     * {@code 0} means no limit.
+     * 
+     * @since 1.2
+     */
+    private int requestsPerSecond;
+    /**
+     * Maximum time in seconds a call waits for its turn when rate is limited;
+     * {@code 0} means default.
+     * 
+     * @since 1.2
+     */
+    private int maxWait;
 
-    @DataBoundConstructor
     public TrackerInstance(String name, URL url, String user, String pass) {
+        this(name, url, user, pass, 0, 0, 0, 0, false, 0, 0);
+    }
+
+    @DataBoundConstructor
+    public TrackerInstance(String name, URL url, String user, String pass, int maxConnections, int connectTimeout,
+            int readTimeout, int idleTimeout, boolean useRest, int requestsPerSecond, int maxWait) {
         this.name = name;
         this.url = url;
         this.user = user;
         this.pass = pass;
+        this.maxConnections = maxConnections;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.idleTimeout = idleTimeout;
+        this.useRest = useRest;
+        this.requestsPerSecond = requestsPerSecond;
+        this.maxWait = maxWait;
     }
 
     public String getName() {
@@ -89,4 +135,82 @@ public class TrackerInstance {
     public void setPass(String pass) {
         this.pass = pass;
     }
-}
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public boolean isUseRest() {
+        return useRest;
+    }
+
+    public void setUseRest(boolean useRest) {
+        this.useRest = useRest;
+    }
+
+    public int getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public void setRequestsPerSecond(int requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    public int getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(int maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Checks whether {@code other} describes connection to the same JIRA, using
+     * the same credentials and connection settings.
+     * 
+     * @param other
+     *            JIRA instance to compare with. Rate limit is not compared,
+     *            it's changed without closing sessions.
+     * @return {@code true} if sessions opened for one instance may be used by
+     *         the other.
+     */
+    public boolean hasSameConnection(TrackerInstance other) {
+        return other != null && equal(url == null ? null : url.toExternalForm(),
+                other.url == null ? null : other.url.toExternalForm())
+                && equal(user, other.user) && equal(pass, other.pass) && maxConnections == other.maxConnections
+                && connectTimeout == other.connectTimeout && readTimeout == other.readTimeout
+                && idleTimeout == other.idleTimeout && useRest == other.useRest;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
\ No newline at end of file
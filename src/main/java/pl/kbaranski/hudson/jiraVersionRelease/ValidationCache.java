@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import hudson.util.FormValidation;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checks of JIRA URL and credentials done while global configuration page is
+ * edited. Checks run in background, with SOAP stub timeout, and their results
+ * are kept for a short time, keyed by URL, user and hash of password, so
+ * typing in the form does not log in to JIRA on every keystroke. Checks of
+ * the same data requested while one is running wait for its result. Session
+ * opened by check is closed right away.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class ValidationCache {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(ValidationCache.class.getName());
+
+    /** Time (in milliseconds) for which result of check is reused. */
+    public static final long TTL = Long.getLong(ValidationCache.class.getName() + ".ttl", 30 * 1000L);
+
+    /**
+     * Time (in seconds) after which check is abandoned; also the time request
+     * thread waits for its result.
+     */
+    public static final int TIMEOUT = Integer.getInteger(ValidationCache.class.getName() + ".timeout", 10);
+
+    /** Maximum number of checks running at once. */
+    private static final int MAX_THREADS = 4;
+
+    /** Results kept at most; expired ones are dropped when limit is reached. */
+    private static final int MAX_RESULTS = 64;
+
+    /** Registry providing SOAP service stubs. */
+    private final JiraClientRegistry registry;
+
+    /** Running and finished checks by key. */
+    private final ConcurrentMap<String, Check> checks = new ConcurrentHashMap<String, Check>();
+
+    private final ThreadPoolExecutor executor;
+
+    public ValidationCache(JiraClientRegistry registry) {
+        this.registry = registry;
+        this.executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new JiraThreadFactory("JIRA validation"));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Checks whether JIRA SOAP service is available under {@code url}.
+     * 
+     * @param url
+     *            URL of JIRA.
+     * @return Result of (possibly earlier) check.
+     */
+    public FormValidation checkUrl(final URL url) {
+        return check("url\n" + url.toExternalForm(), new Callable<FormValidation>() {
+            public FormValidation call() throws JiraException {
+                new JiraUtil(new TrackerInstance(null, url, null, null), registry.getSoapService(url), null, null)
+                        .connectNoLogin();
+                return FormValidation.ok();
+            }
+        });
+    }
+
+    /**
+     * Checks whether user may log in to JIRA available under {@code url}.
+     * 
+     * @param url
+     *            URL of JIRA.
+     * @param user
+     *            User name.
+     * @param pass
+     *            Password.
+     * @return Result of (possibly earlier) check.
+     */
+    public FormValidation checkLogon(final URL url, final String user, final String pass) {
+        String key = "logon\n" + url.toExternalForm() + '\n' + user + '\n' + hash(pass);
+        return check(key, new Callable<FormValidation>() {
+            public FormValidation call() throws JiraException {
+                JiraUtil jiraUtil = new JiraUtil(new TrackerInstance(null, url, user, pass),
+                        registry.getSoapService(url), null, null);
+                jiraUtil.connect();
+                try {
+                    jiraUtil.disconnect();
+                } catch (JiraException e) {
+                    LOG.log(Level.WARNING, "[JiraException] ", e);
+                }
+                return FormValidation.ok();
+            }
+        });
+    }
+
+    private FormValidation check(String key, Callable<FormValidation> call) {
+        Check check = checks.get(key);
+        while (check == null || check.isExpired()) {
+            Check created = new Check(call);
+            boolean added = check == null ? checks.putIfAbsent(key, created) == null : checks.replace(key, check,
+                    created);
+            if (added) {
+                if (checks.size() > MAX_RESULTS) {
+                    evictExpired();
+                }
+                executor.execute(created.task);
+                check = created;
+            } else {
+                // Inny watek rozpoczal sprawdzenie w tym samym czasie
+                check = checks.get(key);
+            }
+        }
+        try {
+            return check.task.get(TIMEOUT, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            return FormValidation.warning("JIRA did not respond within " + TIMEOUT + " s");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FormValidation.ok();
+        } catch (ExecutionException e) {
+            return error(e.getCause());
+        }
+    }
+
+    private static FormValidation error(Throwable e) {
+        Throwable cause = e.getCause();
+        if (cause != null && cause.getMessage() != null && !"".equals(cause.getMessage())) {
+            return FormValidation.error(cause.getMessage());
+        } else {
+            return FormValidation.error(e.getMessage());
+        }
+    }
+
+    private void evictExpired() {
+        for (Iterator<Check> it = checks.values().iterator(); it.hasNext();) {
+            if (it.next().isExpired()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Stops running checks. Called when Hudson / Jenkins is shutting down.
+     */
+    public void close() {
+        executor.shutdownNow();
+        checks.clear();
+    }
+
+    private static String hash(String pass) {
+        if (pass == null) {
+            return "";
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(pass.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Single check and time it was started.
+     */
+    private static final class Check {
+        private final FutureTask<FormValidation> task;
+        private final long started = System.currentTimeMillis();
+
+        Check(Callable<FormValidation> call) {
+            this.task = new FutureTask<FormValidation>(call);
+        }
+
+        /** Running checks never expire. */
+        boolean isExpired() {
+            return task.isDone() && System.currentTimeMillis() - started > TTL;
+        }
+    }
+}
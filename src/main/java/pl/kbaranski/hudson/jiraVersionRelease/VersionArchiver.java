@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Hudson;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Periodically archives old released versions of JIRA projects of all jobs
+ * that define retention policy, so {@code getVersions} responses read by
+ * builds don't grow forever. Each JIRA project (and version name schema) is
+ * processed once, even if it's used by many jobs. Reports are written to the
+ * log of this task.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ * @see ArchiveTask
+ */
+@Extension
+public class VersionArchiver extends AsyncPeriodicWork {
+
+    /** Time (in milliseconds) between runs. */
+    public static final long PERIOD = Long.getLong(VersionArchiver.class.getName() + ".period", 6 * HOUR);
+
+    public VersionArchiver() {
+        super("JIRA version archiver");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return PERIOD;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        JiraVersionReleasePublisher.DescriptorImpl descriptor = Hudson.getInstance().getDescriptorByType(
+                JiraVersionReleasePublisher.DescriptorImpl.class);
+        if (descriptor == null) {
+            return;
+        }
+        Set<String> processed = new HashSet<String>();
+        for (AbstractProject<?, ?> job : Hudson.getInstance().getAllItems(AbstractProject.class)) {
+            JiraVersionReleasePublisher publisher = job.getPublishersList().get(JiraVersionReleasePublisher.class);
+            if (publisher == null || (publisher.getArchiveKeep() <= 0 && publisher.getArchiveAfterDays() <= 0)) {
+                continue;
+            }
+            for (ReleaseTarget target : publisher.getTargets()) {
+                if (target.getVersionNameMatcher() == null
+                        || !processed.add(publisher.getInstanceName() + '/' + target.getProjectKey() + '/'
+                                + target.getPrefixRegexp())) {
+                    continue;
+                }
+                ArchiveTask task = new ArchiveTask(descriptor.getClients(), publisher.getInstanceName(),
+                        target.getProjectKey(), target.getVersionNameMatcher(), publisher.getArchiveKeep(),
+                        publisher.getArchiveAfterDays());
+                try {
+                    listener.getLogger().println(task.call());
+                } catch (JiraException e) {
+                    e.printStackTrace(listener.error("Failed to archive versions of " + target.getProjectKey()
+                            + " (job " + job.getFullName() + ")"));
+                }
+            }
+        }
+    }
+}
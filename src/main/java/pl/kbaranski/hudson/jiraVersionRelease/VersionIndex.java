@@ -0,0 +1,293 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * In-memory index of not released (and not archived) versions of single JIRA
+ * project, kept between builds. Versions are indexed by number of the build
+ * they correspond to, which is the part of name after prefix of the job. Index
+ * is shared by jobs with different prefixes, so version is indexed under each
+ * number its name may end with (e.g. {@code build-15} under {@code 15} for
+ * prefix {@code build-} and {@code 5} for prefix {@code build-1}). Index is
+ * updated when plugin itself releases or creates versions, so full
+ * {@code getVersions()} call is needed only on a miss or when index becomes
+ * stale. Counters of hits and misses are published over JMX (see
+ * {@link JiraMetrics}).
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class VersionIndex implements VersionIndexMBean {
+
+    /**
+     * Time (in milliseconds) after which index is considered stale and is
+     * fully reloaded from JIRA.
+     */
+    public static final long STALENESS = Long.getLong(VersionIndex.class.getName() + ".staleness", 60 * 60 * 1000L);
+
+    /** Versions by each number at the end of their names. */
+    private final Map<Integer, List<RemoteVersion>> versions = new HashMap<Integer, List<RemoteVersion>>();
+
+    /** Time of last full reload, {@code 0} if index was never loaded. */
+    private long loaded;
+
+    /**
+     * Highest number of version released by the plugin, by version name
+     * without the number (jobs may share project using different prefixes).
+     * Kept when index is invalidated.
+     */
+    private final Map<String, Integer> lastReleased = new HashMap<String, Integer>();
+
+    /** Number of lookups answered from index. */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Number of lookups that required reload of the index. */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns copies of not released versions which names end with
+     * {@code number}.
+     * 
+     * @param number
+     *            Number at the end of version name (build number).
+     * @return Matching versions; empty if index is stale or there are no such
+     *         versions.
+     */
+    public synchronized List<RemoteVersion> lookup(int number) {
+        if (loaded == 0 || System.currentTimeMillis() - loaded > STALENESS) {
+            return Collections.emptyList();
+        }
+        List<RemoteVersion> found = versions.get(number);
+        if (found == null) {
+            return Collections.emptyList();
+        }
+        List<RemoteVersion> copies = new ArrayList<RemoteVersion>(found.size());
+        for (RemoteVersion version : found) {
+            copies.add(copy(version));
+        }
+        return copies;
+    }
+
+    /**
+     * Checks whether index was loaded and is not stale, so versions missing
+     * in it are really missing among not released versions of the project.
+     * 
+     * @return {@code true} if index may be trusted.
+     */
+    public synchronized boolean isFresh() {
+        return loaded != 0 && System.currentTimeMillis() - loaded <= STALENESS;
+    }
+
+    /**
+     * Replaces content of the index with {@code all} versions of the project
+     * returned by JIRA. Released and archived ones are skipped.
+     * 
+     * @param all
+     *            All versions of the project.
+     */
+    public synchronized void reload(RemoteVersion[] all) {
+        versions.clear();
+        for (RemoteVersion version : all) {
+            if (!version.isReleased() && !version.isArchived()) {
+                add(version);
+            }
+        }
+        loaded = System.currentTimeMillis();
+    }
+
+    /**
+     * Adds version just created by the plugin.
+     * 
+     * @param version
+     *            Version returned by JIRA after creation.
+     */
+    public synchronized void created(RemoteVersion version) {
+        if (loaded != 0 && version != null && version.getName() != null) {
+            add(copy(version));
+        }
+    }
+
+    /**
+     * Removes version just released by the plugin.
+     * 
+     * @param version
+     *            Released version.
+     */
+    public synchronized void released(RemoteVersion version) {
+        String name = version.getName();
+        if (name == null) {
+            return;
+        }
+        for (int start : numberStarts(name)) {
+            int number = Integer.parseInt(name.substring(start));
+            String prefix = name.substring(0, start);
+            Integer last = lastReleased.get(prefix);
+            if (last == null || last < number) {
+                lastReleased.put(prefix, number);
+            }
+            List<RemoteVersion> list = versions.get(number);
+            if (list == null) {
+                continue;
+            }
+            for (int i = 0; i < list.size(); i++) {
+                RemoteVersion indexed = list.get(i);
+                if (indexed.getId() != null ? indexed.getId().equals(version.getId()) : indexed.getName().equals(
+                        name)) {
+                    list.remove(i);
+                    break;
+                }
+            }
+            if (list.isEmpty()) {
+                versions.remove(number);
+            }
+        }
+    }
+
+    /**
+     * Drops content of the index, so next lookup reloads it. Used when JIRA
+     * rejects operation on indexed version (e.g. it was changed manually).
+     */
+    public synchronized void invalidate() {
+        versions.clear();
+        loaded = 0;
+    }
+
+    /**
+     * Returns highest number of version with name starting with
+     * {@code prefix} released by the plugin. Versions with lower numbers
+     * belong to builds that already ran.
+     * 
+     * @param prefix
+     *            Version name without build number.
+     * @return Number at the end of version name or {@code -1} if plugin did
+     *         not release any version with the prefix yet.
+     */
+    public synchronized int getLastReleased(String prefix) {
+        Integer last = lastReleased.get(prefix);
+        return last == null ? -1 : last;
+    }
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void add(RemoteVersion version) {
+        for (int start : numberStarts(version.getName())) {
+            int number = Integer.parseInt(version.getName().substring(start));
+            List<RemoteVersion> list = versions.get(number);
+            if (list == null) {
+                list = new ArrayList<RemoteVersion>(1);
+                versions.put(number, list);
+            }
+            list.add(version);
+        }
+    }
+
+    /**
+     * Returns positions in {@code name} where build number may start: each
+     * digit at the end of name, except zeros that are not the last digit
+     * (build numbers are written without leading zeros).
+     * 
+     * @param name
+     *            Version name.
+     * @return Positions from the longest number to the shortest; empty if
+     *         name does not end with digit.
+     */
+    private static List<Integer> numberStarts(String name) {
+        if (name == null) {
+            return Collections.emptyList();
+        }
+        List<Integer> starts = new ArrayList<Integer>(1);
+        for (int i = Math.max(name.length() - digits(name), name.length() - 9); i < name.length(); i++) {
+            if (name.charAt(i) != '0' || i == name.length() - 1) {
+                starts.add(i);
+            }
+        }
+        return starts;
+    }
+
+    /**
+     * Copies version, so it may be changed (e.g. released) by one build
+     * without affecting others.
+     */
+    static RemoteVersion copy(RemoteVersion v) {
+        return new RemoteVersion(v.getId(), v.getName(), v.isArchived(), v.getReleaseDate(), v.isReleased(),
+                v.getSequence());
+    }
+
+    /**
+     * Returns number written with decimal digits at the end of {@code name}.
+     * 
+     * @param name
+     *            Version name.
+     * @return Number at the end of name or {@code -1} if name does not end with
+     *         digit (or number is too big).
+     */
+    static int number(String name) {
+        if (name == null) {
+            return -1;
+        }
+        int start = name.length() - digits(name);
+        if (start == name.length() || name.length() - start > 9) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = start; i < name.length(); i++) {
+            number = number * 10 + (name.charAt(i) - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Counts digits at the end of {@code name}.
+     */
+    private static int digits(String name) {
+        int start = name.length();
+        while (start > 0 && name.charAt(start - 1) >= '0' && name.charAt(start - 1) <= '9') {
+            start--;
+        }
+        return name.length() - start;
+    }
+}
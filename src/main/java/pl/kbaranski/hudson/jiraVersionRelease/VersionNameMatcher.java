@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches JIRA version names against version name schema of a job: prefix
+ * defined by regular expression followed by build number. Regular expression
+ * is compiled once, when job configuration is created or loaded.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class VersionNameMatcher {
+
+    /** Compiled regular expression defining prefix of version name. */
+    private final Pattern prefixPattern;
+
+    /**
+     * Compiles {@code prefixRegexp}.
+     * 
+     * @param prefixRegexp
+     *            Regular expression defining prefix of version name;
+     *            {@code null} means empty prefix.
+     * @throws PatternSyntaxException
+     *             If {@code prefixRegexp} is not valid regular expression.
+     */
+    public VersionNameMatcher(String prefixRegexp) throws PatternSyntaxException {
+        this.prefixPattern = Pattern.compile(prefixRegexp == null ? "" : prefixRegexp);
+    }
+
+    public String getPrefixRegexp() {
+        return prefixPattern.pattern();
+    }
+
+    /**
+     * Creates object matching names of versions that correspond to single
+     * build. Returned object is not thread safe.
+     * 
+     * @param buildNumber
+     *            Number of Hudson / Jenkins build.
+     * @return Matcher of version names of {@code buildNumber}.
+     */
+    public Lookup forBuild(int buildNumber) {
+        return new Lookup(buildNumber);
+    }
+
+    /**
+     * Matcher of version names that correspond to single build. Version name
+     * matches when it ends with build number and the rest of it matches the
+     * prefix regular expression. Single {@link Matcher} is reused for all
+     * checked names.
+     */
+    public class Lookup {
+        /** Build number as it should appear at the end of version name. */
+        private final String suffix;
+
+        /** Matcher of prefix pattern reset for each checked name. */
+        private final Matcher matcher = prefixPattern.matcher("");
+
+        /** Length of prefix of the last matched name. */
+        private int prefixLength = -1;
+
+        /** Last matched name. */
+        private String matchedName;
+
+        Lookup(int buildNumber) {
+            this.suffix = Integer.toString(buildNumber);
+        }
+
+        /**
+         * Checks whether {@code name} is name of version that corresponds to
+         * the build.
+         * 
+         * @param name
+         *            Name of version in JIRA.
+         * @return {@code true} if name matches.
+         */
+        public boolean matches(String name) {
+            if (name == null || !name.endsWith(suffix)) {
+                return false;
+            }
+            int end = name.length() - suffix.length();
+            matcher.reset(name);
+            matcher.region(0, end);
+            if (!matcher.matches()) {
+                return false;
+            }
+            prefixLength = end;
+            matchedName = name;
+            return true;
+        }
+
+        /**
+         * Returns prefix of the last name for which
+         * {@link Lookup#matches(String)} returned {@code true}.
+         * 
+         * @return Version name without build number or {@code null} if no
+         *         name matched yet.
+         */
+        public String getPrefix() {
+            return matchedName == null ? null : matchedName.substring(0, prefixLength);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Hudson;
+import hudson.model.ManagementLink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Page on "Manage Hudson / Jenkins" reconciling JIRA versions of chosen jobs
+ * with their build history (see {@link Reconciliation}). Changes are computed
+ * and applied in background; page shows their progress. Only one
+ * reconciliation runs at a time.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+@Extension
+public class VersionReconcileLink extends ManagementLink {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(VersionReconcileLink.class.getName());
+
+    /** Last (or current) reconciliation, {@code null} if none was started. */
+    private volatile Reconciliation reconciliation;
+
+    @Override
+    public String getIconFileName() {
+        return "notepad.gif";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "jiraVersionRelease-reconcile";
+    }
+
+    public String getDisplayName() {
+        return Messages.reconcileDisplayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.reconcileDescription();
+    }
+
+    public Reconciliation getReconciliation() {
+        return reconciliation;
+    }
+
+    /**
+     * Checks whether reconciliation is in progress, so page should be
+     * refreshed.
+     * 
+     * @return {@code true} while changes are computed or applied.
+     */
+    public boolean isBusy() {
+        Reconciliation current = reconciliation;
+        if (current == null) {
+            return false;
+        }
+        Reconciliation.State state = current.getState();
+        return state == Reconciliation.State.PLANNING || state == Reconciliation.State.APPLYING;
+    }
+
+    /**
+     * Returns jobs which release JIRA versions.
+     * 
+     * @return Jobs with {@link JiraVersionReleasePublisher}.
+     */
+    public List<AbstractProject<?, ?>> getJobs() {
+        List<AbstractProject<?, ?>> jobs = new ArrayList<AbstractProject<?, ?>>();
+        for (AbstractProject<?, ?> job : Hudson.getInstance().getAllItems(AbstractProject.class)) {
+            if (job.getPublishersList().get(JiraVersionReleasePublisher.class) != null) {
+                jobs.add(job);
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Computes changes of jobs chosen on the page.
+     */
+    public void doPlan(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (!checkRequest(req, rsp)) {
+            return;
+        }
+        final JiraVersionReleasePublisher.DescriptorImpl descriptor = Hudson.getInstance().getDescriptorByType(
+                JiraVersionReleasePublisher.DescriptorImpl.class);
+        List<AbstractProject<?, ?>> jobs = new ArrayList<AbstractProject<?, ?>>();
+        String[] names = req.getParameterValues("job");
+        if (names != null) {
+            for (String name : names) {
+                AbstractProject<?, ?> job = Hudson.getInstance().getItemByFullName(name, AbstractProject.class);
+                if (job != null) {
+                    jobs.add(job);
+                }
+            }
+        }
+        synchronized (this) {
+            if (!isBusy() && descriptor != null && !jobs.isEmpty()) {
+                final Reconciliation planned = new Reconciliation(descriptor.getClients(), jobs);
+                reconciliation = planned;
+                start("JIRA reconciliation planning", new Runnable() {
+                    public void run() {
+                        planned.plan();
+                    }
+                });
+            }
+        }
+        rsp.sendRedirect(".");
+    }
+
+    /**
+     * Applies computed changes.
+     */
+    public void doApply(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (!checkRequest(req, rsp)) {
+            return;
+        }
+        final Reconciliation planned = reconciliation;
+        // Ponowne wyslanie formularza nie uruchomi drugiego watku
+        if (planned != null && planned.startApplying()) {
+            start("JIRA reconciliation", new Runnable() {
+                public void run() {
+                    try {
+                        planned.apply();
+                    } catch (InterruptedException e) {
+                        LOG.log(Level.WARNING, "JIRA reconciliation interrupted", e);
+                    }
+                }
+            });
+        }
+        rsp.sendRedirect(".");
+    }
+
+    /**
+     * Stops current reconciliation.
+     */
+    public void doCancel(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (!checkRequest(req, rsp)) {
+            return;
+        }
+        Reconciliation current = reconciliation;
+        if (current != null) {
+            current.cancel();
+        }
+        rsp.sendRedirect(".");
+    }
+
+    private boolean checkRequest(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+        if (!"POST".equals(req.getMethod())) {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return false;
+        }
+        return true;
+    }
+
+    private static void start(String name, Runnable task) {
+        new JiraThreadFactory(name).newThread(task).start();
+    }
+}
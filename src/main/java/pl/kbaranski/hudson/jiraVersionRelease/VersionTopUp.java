@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Keeps versions of the next builds created ahead of time, so build only has
+ * to release its version. Run in the background (by
+ * {@link ReleaseDispatcher}) after each release. Versions that already exist
+ * are not created again; versions that could not be created will be created
+ * by the next top-up.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class VersionTopUp implements Runnable {
+    /** Logger object. */
+    private final static Logger LOG = Logger.getLogger(VersionTopUp.class.getName());
+
+    /** Registry of JIRA clients. */
+    private final JiraClientRegistry clients;
+
+    /** Name of JIRA instance. */
+    private final String instanceName;
+
+    /** Key of JIRA project. */
+    private final String projectKey;
+
+    /** Compiled version name schema. */
+    private final VersionNameMatcher versionNameMatcher;
+
+    /** Version name without build number. */
+    private final String prefix;
+
+    /** Build number of the first version that should exist. */
+    private final int first;
+
+    /** Build number of the last version that should exist. */
+    private final int last;
+
+    public VersionTopUp(JiraClientRegistry clients, String instanceName, String projectKey,
+            VersionNameMatcher versionNameMatcher, String prefix, int first, int last) {
+        this.clients = clients;
+        this.instanceName = instanceName;
+        this.projectKey = projectKey;
+        this.versionNameMatcher = versionNameMatcher;
+        this.prefix = prefix;
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Creates versions {@code prefix + first} to {@code prefix + last} that
+     * do not exist yet. Existing versions are taken from version index when it
+     * is fresh, otherwise all versions are downloaded. Versions of builds that
+     * already released their versions are skipped, as top-up may run after
+     * later builds.
+     */
+    public void run() {
+        JiraSessionManager sessionManager = clients.get(instanceName);
+        if (sessionManager == null) {
+            return;
+        }
+        VersionIndex index = sessionManager.getVersionIndex(projectKey);
+        int from = Math.max(first, index.getLastReleased(prefix) + 1);
+        if (from > last) {
+            return;
+        }
+        JiraUtil jiraUtil = new JiraUtil(sessionManager, projectKey, versionNameMatcher);
+        try {
+            jiraUtil.connect();
+            Set<String> existing = new HashSet<String>();
+            if (index.isFresh()) {
+                for (int number = from; number <= last; number++) {
+                    for (RemoteVersion version : index.lookup(number)) {
+                        existing.add(version.getName());
+                    }
+                }
+            } else {
+                for (RemoteVersion version : jiraUtil.fetchVersions()) {
+                    existing.add(version.getName());
+                }
+            }
+            for (int number = from; number <= last; number++) {
+                String name = prefix + number;
+                if (!existing.contains(name)) {
+                    jiraUtil.createVersion(name);
+                    LOG.log(Level.FINE, "Version " + name + " of " + projectKey + " created ahead of time");
+                }
+            }
+        } catch (JiraException e) {
+            LOG.log(Level.WARNING, "Failed to create versions " + prefix + first + " - " + prefix + last + " of "
+                    + projectKey + " ahead of time", e);
+        } finally {
+            try {
+                jiraUtil.disconnect();
+            } catch (JiraException e) {
+                LOG.log(Level.WARNING, "[JiraException] ", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.Test;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Tests of {@link JsonVersionReader}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class JsonVersionReaderTest {
+
+    private static final String VERSIONS = "[{\"self\":\"http://jira/rest/api/2/version/1\",\"id\":\"1\","
+            + "\"description\":\"first \\\"quoted\\\" release\",\"name\":\"1.0.1\",\"archived\":false,"
+            + "\"released\":true,\"releaseDate\":\"2011-05-01\",\"projectId\":10000},"
+            + " {\"id\":\"2\",\"name\":\"1.0.2\",\"archived\":false,\"released\":false,"
+            + "\"extra\":{\"nested\":[1,2,{\"a\":null}]},\"overdue\":false},\n"
+            + " {\"id\":\"3\",\"name\":\"1.0.\\u0033\",\"archived\":true,\"released\":false},"
+            + " {\"id\":\"4\",\"name\":\"1.0.4\",\"released\":false,\"releaseDate\":null}]";
+
+    private static JsonVersionReader reader(String json) {
+        return new JsonVersionReader(new StringReader(json));
+    }
+
+    @Test
+    public void readsAllVersions() throws IOException {
+        RemoteVersion[] versions = reader(VERSIONS).readAll();
+        assertEquals(4, versions.length);
+        assertEquals("1", versions[0].getId());
+        assertEquals("1.0.1", versions[0].getName());
+        assertTrue(versions[0].isReleased());
+        Calendar releaseDate = versions[0].getReleaseDate();
+        assertEquals(2011, releaseDate.get(Calendar.YEAR));
+        assertEquals(Calendar.MAY, releaseDate.get(Calendar.MONTH));
+        assertEquals(1, releaseDate.get(Calendar.DAY_OF_MONTH));
+        assertFalse(versions[1].isReleased());
+        assertEquals("1.0.3", versions[2].getName());
+        assertTrue(versions[2].isArchived());
+        assertNull(versions[3].getReleaseDate());
+    }
+
+    @Test
+    public void readsEmptyArray() throws IOException {
+        assertEquals(0, reader(" [ ] ").readAll().length);
+    }
+
+    @Test
+    public void passesOnlyUnreleasedVersionsToVisitor() throws IOException {
+        final List<String> names = new ArrayList<String>();
+        assertTrue(reader(VERSIONS).readUnreleased(new VersionVisitor() {
+            public boolean visit(RemoteVersion version) {
+                names.add(version.getName());
+                return true;
+            }
+        }));
+        assertEquals(2, names.size());
+        assertEquals("1.0.2", names.get(0));
+        assertEquals("1.0.4", names.get(1));
+    }
+
+    @Test
+    public void stopsWhenVisitorAsks() throws IOException {
+        final List<String> names = new ArrayList<String>();
+        assertFalse(reader(VERSIONS).readUnreleased(new VersionVisitor() {
+            public boolean visit(RemoteVersion version) {
+                names.add(version.getName());
+                return false;
+            }
+        }));
+        assertEquals(1, names.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedJsonIsRejected() throws IOException {
+        reader("[{\"id\":\"1\" \"name\":\"1.0.1\"}]").readAll();
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedJsonIsRejected() throws IOException {
+        reader("[{\"id\":\"1\",\"name\":\"1.0").readAll();
+    }
+}
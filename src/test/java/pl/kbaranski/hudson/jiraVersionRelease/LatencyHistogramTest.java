@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link LatencyHistogram}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramReturnsZero() {
+        assertEquals(0, new LatencyHistogram().getPercentile(0.99));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 4; i++) {
+            histogram.record(i);
+        }
+        assertEquals(0, histogram.getPercentile(0.25));
+        assertEquals(1, histogram.getPercentile(0.5));
+        assertEquals(3, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void eachValueFallsIntoBucketBelowItsUpperBound() {
+        int last = LatencyHistogram.index(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(last));
+        for (int i = 0; i < last; i++) {
+            long bound = LatencyHistogram.upperBound(i);
+            assertEquals("upper bound of bucket " + i, i, LatencyHistogram.index(bound));
+            assertEquals("value after bucket " + i, i + 1, LatencyHistogram.index(bound + 1));
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        assertWithin(5000, histogram.getPercentile(0.5));
+        assertWithin(9500, histogram.getPercentile(0.95));
+        assertWithin(9900, histogram.getPercentile(0.99));
+        assertWithin(10000, histogram.getPercentile(1));
+    }
+
+    /** Buckets split each power of two in four, so error is below 25%. */
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + ", got " + actual, actual >= expected
+                && actual <= expected * 5 / 4);
+    }
+
+    @Test
+    public void largeValuesDoNotOverflow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(0.5));
+    }
+}
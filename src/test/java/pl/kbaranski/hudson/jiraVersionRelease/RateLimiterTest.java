@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link RateLimiter}. Time is moved by the tests, so results do not
+ * depend on the speed of the machine.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class RateLimiterTest {
+
+    private static final long MILLIS = 1000000L;
+
+    /** Limiter whose time passes only when test moves it. */
+    private static final class ManualRateLimiter extends RateLimiter {
+        private long now;
+
+        @Override
+        long nanoTime() {
+            return now;
+        }
+
+        @Override
+        void await(long nanos) throws InterruptedException {
+            wait();
+        }
+
+        synchronized void advance(long millis) {
+            now += millis * MILLIS;
+            notifyAll();
+        }
+    }
+
+    @Test
+    public void unlimitedRateNeverWaits() throws InterruptedException {
+        RateLimiter limiter = new ManualRateLimiter();
+        assertFalse(limiter.isLimited());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.acquire("PRJ"));
+        }
+        assertEquals(0, limiter.getWaiting());
+    }
+
+    @Test
+    public void oneSecondOfCallsPassesAtOnce() throws InterruptedException {
+        ManualRateLimiter limiter = new ManualRateLimiter();
+        limiter.setRate(10, 1);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.acquire("PRJ"));
+        }
+        assertEquals(0, limiter.getWaiting());
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        Thread thread = start(limiter, "PRJ", order);
+        awaitWaiting(limiter, 1);
+        limiter.advance(100);
+        thread.join();
+        assertEquals(Arrays.asList("PRJ"), order);
+    }
+
+    @Test
+    public void callsAboveRateWaitForToken() throws InterruptedException {
+        ManualRateLimiter limiter = new ManualRateLimiter();
+        limiter.setRate(10, 5);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire("PRJ");
+        }
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        Thread thread = start(limiter, "PRJ", order);
+        awaitWaiting(limiter, 1);
+        // Pol tokenu przy 10 wywolaniach na sekunde
+        limiter.advance(50);
+        assertEquals(1, limiter.getWaiting());
+        assertTrue(order.isEmpty());
+        limiter.advance(50);
+        thread.join();
+        assertEquals(Arrays.asList("PRJ"), order);
+        assertEquals(0, limiter.getWaiting());
+    }
+
+    @Test
+    public void waitingKeysAreServedInTurns() throws InterruptedException {
+        ManualRateLimiter limiter = new ManualRateLimiter();
+        limiter.setRate(20, 10);
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire("other");
+        }
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(start(limiter, "BUSY", order));
+            awaitWaiting(limiter, i + 1);
+        }
+        threads.add(start(limiter, "QUIET", order));
+        awaitWaiting(limiter, 9);
+        // Jeden token co 50 ms; kolejny dopiero gdy poprzedni zostal wykorzystany
+        for (int i = 1; i <= 9; i++) {
+            limiter.advance(50);
+            awaitCalls(order, i);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(9, order.size());
+        // Projekt z jednym wywolaniem nie czeka na wszystkie wywolania innego projektu
+        assertEquals("order: " + order, "QUIET", order.get(1));
+    }
+
+    @Test
+    public void waitIsBounded() throws InterruptedException {
+        ManualRateLimiter limiter = new ManualRateLimiter();
+        limiter.setRate(1, 1);
+        assertTrue(limiter.acquire("PRJ"));
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        Thread first = start(limiter, "A", order);
+        Thread second = start(limiter, "B", order);
+        awaitWaiting(limiter, 2);
+        // Po sekundzie jest jeden token, a drugi z czekajacych przekroczyl maksymalny czas oczekiwania
+        limiter.advance(1000);
+        first.join();
+        second.join();
+        assertEquals("order: " + order, 1, order.size());
+        assertEquals(0, limiter.getWaiting());
+    }
+
+    private static Thread start(final RateLimiter limiter, final String key, final List<String> order) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    if (limiter.acquire(key)) {
+                        order.add(key);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitWaiting(RateLimiter limiter, int waiting) throws InterruptedException {
+        while (limiter.getWaiting() < waiting) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitCalls(List<String> order, int calls) throws InterruptedException {
+        while (order.size() < calls) {
+            Thread.sleep(1);
+        }
+    }
+}
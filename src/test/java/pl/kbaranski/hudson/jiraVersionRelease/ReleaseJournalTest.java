@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of {@link ReleaseJournal}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class ReleaseJournalTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("journal", ".log");
+        file.delete();
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    private void append(String text) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void doneOperationsAreNotPending() throws IOException {
+        ReleaseJournal journal = new ReleaseJournal(file);
+        long release = journal.begin(ReleaseJournal.Operation.RELEASE, "jira", "PRJ", "1.0.5");
+        long create = journal.begin(ReleaseJournal.Operation.CREATE, "jira", "PRJ", "1.0.6");
+        journal.done(release);
+        List<ReleaseJournal.Entry> pending = journal.getPending();
+        journal.close();
+
+        assertEquals(1, pending.size());
+        assertEquals(create, pending.get(0).getId());
+        assertEquals(ReleaseJournal.Operation.CREATE, pending.get(0).getOperation());
+    }
+
+    @Test
+    public void pendingOperationsAreReplayedAfterRestart() throws IOException {
+        ReleaseJournal journal = new ReleaseJournal(file);
+        long first = journal.begin(ReleaseJournal.Operation.RELEASE, "jira", "PRJ", "1.0.5");
+        long second = journal.begin(ReleaseJournal.Operation.CREATE, "jira", "PRJ", "1.0.6");
+        journal.done(first);
+        journal.close();
+
+        ReleaseJournal reopened = new ReleaseJournal(file);
+        List<ReleaseJournal.Entry> pending = reopened.getPending();
+        assertEquals(1, pending.size());
+        ReleaseJournal.Entry entry = pending.get(0);
+        assertEquals(second, entry.getId());
+        assertEquals("jira", entry.getInstanceName());
+        assertEquals("PRJ", entry.getProjectKey());
+        assertEquals("1.0.6", entry.getVersionName());
+        assertTrue(reopened.begin(ReleaseJournal.Operation.RELEASE, "jira", "PRJ", "1.0.7") > second);
+        reopened.close();
+    }
+
+    @Test
+    public void tornRecordIsSkipped() throws IOException {
+        ReleaseJournal journal = new ReleaseJournal(file);
+        long pending = journal.begin(ReleaseJournal.Operation.RELEASE, "jira", "PRJ", "1.0.5");
+        journal.close();
+        // Awaria w trakcie zapisu kolejnego rekordu
+        append("B\t2\t" + System.currentTimeMillis() + "\tCRE");
+
+        ReleaseJournal reopened = new ReleaseJournal(file);
+        assertEquals(1, reopened.getPending().size());
+        assertEquals(pending, reopened.getPending().get(0).getId());
+
+        // Plik jest przepisany, wiec nowe rekordy nie sa doklejane do uszkodzonego
+        long next = reopened.begin(ReleaseJournal.Operation.CREATE, "jira", "PRJ", "1.0.6");
+        reopened.close();
+        List<ReleaseJournal.Entry> replayed = new ReleaseJournal(file).getPending();
+        assertEquals(2, replayed.size());
+        assertEquals(pending, replayed.get(0).getId());
+        assertEquals(next, replayed.get(1).getId());
+    }
+
+    @Test
+    public void tornDoneRecordLeavesOperationPending() throws IOException {
+        ReleaseJournal journal = new ReleaseJournal(file);
+        long id = journal.begin(ReleaseJournal.Operation.RELEASE, "jira", "PRJ", "1.0.5");
+        journal.close();
+        append("D\t");
+
+        ReleaseJournal reopened = new ReleaseJournal(file);
+        assertEquals(1, reopened.getPending().size());
+        assertEquals(id, reopened.getPending().get(0).getId());
+        reopened.close();
+    }
+
+    @Test
+    public void oldOperationsAreDropped() throws IOException {
+        long old = System.currentTimeMillis() - ReleaseJournal.MAX_AGE - 1000;
+        append("B\t1\t" + old + "\tRELEASE\tjira\tPRJ\t1.0.1\n");
+        append("B\t2\t" + System.currentTimeMillis() + "\tRELEASE\tjira\tPRJ\t1.0.2\n");
+
+        ReleaseJournal journal = new ReleaseJournal(file);
+        assertEquals(1, journal.getPending().size());
+        assertEquals("1.0.2", journal.getPending().get(0).getVersionName());
+        journal.close();
+    }
+
+    @Test
+    public void fieldsAreEscaped() throws IOException {
+        ReleaseJournal journal = new ReleaseJournal(file);
+        journal.begin(ReleaseJournal.Operation.CREATE, "jira\t1", "PRJ", "name %09 with\ttab\nand line");
+        journal.close();
+
+        ReleaseJournal.Entry entry = new ReleaseJournal(file).getPending().get(0);
+        assertEquals("jira\t1", entry.getInstanceName());
+        assertEquals("name %09 with\ttab\nand line", entry.getVersionName());
+    }
+
+    @Test
+    public void journalWorksAfterFailedCompaction() throws IOException {
+        ReleaseJournal journal = new ReleaseJournal(file);
+        long kept = journal.begin(ReleaseJournal.Operation.RELEASE, "jira", "PRJ", "1.0.0");
+        // Katalog w miejscu pliku tymczasowego - przepisanie dziennika sie nie udaje
+        File tmp = new File(file.getPath() + ".tmp");
+        assertTrue(tmp.mkdir());
+        long next;
+        try {
+            for (int i = 1; i <= 1000; i++) {
+                journal.done(journal.begin(ReleaseJournal.Operation.CREATE, "jira", "PRJ", "1.0." + i));
+            }
+            next = journal.begin(ReleaseJournal.Operation.CREATE, "jira", "PRJ", "1.0.1001");
+            assertFalse(next == -1);
+            journal.close();
+        } finally {
+            tmp.delete();
+        }
+
+        List<ReleaseJournal.Entry> pending = new ReleaseJournal(file).getPending();
+        assertEquals(2, pending.size());
+        assertEquals(kept, pending.get(0).getId());
+        assertEquals(next, pending.get(1).getId());
+    }
+}
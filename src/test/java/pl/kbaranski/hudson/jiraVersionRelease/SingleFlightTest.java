@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link SingleFlight}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class SingleFlightTest {
+
+    /** Call that waits for {@code release} and counts its invocations. */
+    private static final class BlockingCall implements SingleFlight.Call<Object> {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger calls = new AtomicInteger();
+        private final Object result;
+        private final JiraException failure;
+
+        BlockingCall(Object result, JiraException failure) {
+            this.result = result;
+            this.failure = failure;
+        }
+
+        public Object call() throws JiraException {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return result;
+        }
+    }
+
+    /** Caller running {@link SingleFlight#execute} in its own thread. */
+    private static final class Caller extends Thread {
+        private final SingleFlight singleFlight;
+        private final String key;
+        private final SingleFlight.Call<Object> call;
+        private Object result;
+        private JiraException failure;
+
+        Caller(SingleFlight singleFlight, String key, SingleFlight.Call<Object> call) {
+            this.singleFlight = singleFlight;
+            this.key = key;
+            this.call = call;
+            start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                result = singleFlight.execute(key, call);
+            } catch (JiraException e) {
+                failure = e;
+            }
+        }
+    }
+
+    private static void awaitShared(SingleFlight singleFlight, long shared) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (singleFlight.getShared() < shared && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(shared, singleFlight.getShared());
+    }
+
+    @Test
+    public void concurrentCallsWithTheSameKeyShareResult() throws InterruptedException {
+        SingleFlight singleFlight = new SingleFlight();
+        Object result = new Object();
+        BlockingCall call = new BlockingCall(result, null);
+        List<Caller> callers = new ArrayList<Caller>();
+        callers.add(new Caller(singleFlight, "key", call));
+        while (call.calls.get() == 0) {
+            Thread.sleep(1);
+        }
+        for (int i = 0; i < 4; i++) {
+            callers.add(new Caller(singleFlight, "key", call));
+        }
+        awaitShared(singleFlight, 4);
+        call.release.countDown();
+        for (Caller caller : callers) {
+            caller.join();
+            assertSame(result, caller.result);
+        }
+        assertEquals(1, call.calls.get());
+    }
+
+    @Test
+    public void callsWithDifferentKeysDoNotWait() throws JiraException, InterruptedException {
+        SingleFlight singleFlight = new SingleFlight();
+        BlockingCall blocked = new BlockingCall("blocked", null);
+        Caller caller = new Caller(singleFlight, "a", blocked);
+        while (blocked.calls.get() == 0) {
+            Thread.sleep(1);
+        }
+        BlockingCall other = new BlockingCall("other", null);
+        other.release.countDown();
+        assertEquals("other", singleFlight.execute("b", other));
+        blocked.release.countDown();
+        caller.join();
+        assertEquals(0, singleFlight.getShared());
+    }
+
+    @Test
+    public void failureIsThrownToAllCallers() throws InterruptedException {
+        SingleFlight singleFlight = new SingleFlight();
+        JiraException failure = new JiraException("failed");
+        BlockingCall call = new BlockingCall(null, failure);
+        Caller first = new Caller(singleFlight, "key", call);
+        while (call.calls.get() == 0) {
+            Thread.sleep(1);
+        }
+        Caller second = new Caller(singleFlight, "key", call);
+        awaitShared(singleFlight, 1);
+        call.release.countDown();
+        first.join();
+        second.join();
+        assertSame(failure, first.failure);
+        assertSame(failure, second.failure);
+    }
+
+    @Test
+    public void finishedCallIsMadeAgain() throws JiraException {
+        SingleFlight singleFlight = new SingleFlight();
+        BlockingCall call = new BlockingCall("result", null);
+        call.release.countDown();
+        singleFlight.execute("key", call);
+        singleFlight.execute("key", call);
+        assertEquals(2, call.calls.get());
+        assertEquals(0, singleFlight.getShared());
+        BlockingCall failing = new BlockingCall(null, new JiraException("failed"));
+        failing.release.countDown();
+        try {
+            singleFlight.execute("key", failing);
+            fail("failure expected");
+        } catch (JiraException e) {
+            assertEquals("failed", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.axis.AxisFault;
+import org.junit.Test;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Tests of {@link SoapVersionReader}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class SoapVersionReaderTest {
+
+    private static final String ENVELOPE_START = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+            + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\""
+            + " xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\""
+            + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"><soapenv:Body>";
+
+    private static final String ENVELOPE_END = "</soapenv:Body></soapenv:Envelope>";
+
+    /** Visitor collecting versions, stopping after {@code limit} of them. */
+    private static final class Collector implements VersionVisitor {
+        private final List<RemoteVersion> versions = new ArrayList<RemoteVersion>();
+        private final int limit;
+
+        Collector(int limit) {
+            this.limit = limit;
+        }
+
+        public boolean visit(RemoteVersion version) {
+            versions.add(version);
+            return versions.size() < limit;
+        }
+    }
+
+    private static Collector read(String body, int limit) throws IOException {
+        Collector collector = new Collector(limit);
+        new SoapVersionReader().readUnreleased(
+                new ByteArrayInputStream((ENVELOPE_START + body + ENVELOPE_END).getBytes("UTF-8")), collector);
+        return collector;
+    }
+
+    private static String inlineVersion(String id, String name, boolean released, String releaseDate) {
+        return "<getVersionsReturn xsi:type=\"ns2:RemoteVersion\""
+                + " xmlns:ns2=\"http://beans.soap.rpc.jira.atlassian.com\">"
+                + "<id xsi:type=\"xsd:string\">" + id + "</id>"
+                + "<name xsi:type=\"xsd:string\">" + name + "</name>"
+                + "<archived xsi:type=\"xsd:boolean\">false</archived>"
+                + (releaseDate == null ? "<releaseDate xsi:type=\"xsd:dateTime\" xsi:nil=\"true\"/>"
+                        : "<releaseDate xsi:type=\"xsd:dateTime\">" + releaseDate + "</releaseDate>")
+                + "<released xsi:type=\"xsd:boolean\">" + released + "</released>"
+                + "<sequence xsi:type=\"xsd:long\">" + id + "</sequence>"
+                + "</getVersionsReturn>";
+    }
+
+    @Test
+    public void readsInlineVersionsSkippingReleasedOnes() throws IOException {
+        Collector collector = read("<ns1:getVersionsResponse xmlns:ns1=\"http://soap.rpc.jira.atlassian.com\">"
+                + "<getVersionsReturn xsi:type=\"soapenc:Array\""
+                + " xmlns:soapenc=\"http://schemas.xmlsoap.org/soap/encoding/\">"
+                + inlineVersion("1", "1.0.1", true, "2011-05-01T10:00:00.000Z")
+                + inlineVersion("2", "1.0.2", false, "2011-05-02T10:00:00.000Z")
+                + inlineVersion("3", "1.0.3", false, null)
+                + "</getVersionsReturn></ns1:getVersionsResponse>", Integer.MAX_VALUE);
+
+        assertEquals(2, collector.versions.size());
+        RemoteVersion second = collector.versions.get(0);
+        assertEquals("2", second.getId());
+        assertEquals("1.0.2", second.getName());
+        assertFalse(second.isReleased());
+        assertEquals(Long.valueOf(2), second.getSequence());
+        Calendar releaseDate = second.getReleaseDate();
+        releaseDate.setTimeZone(TimeZone.getTimeZone("UTC"));
+        assertEquals(2011, releaseDate.get(Calendar.YEAR));
+        assertEquals(Calendar.MAY, releaseDate.get(Calendar.MONTH));
+        assertEquals(2, releaseDate.get(Calendar.DAY_OF_MONTH));
+        assertNull(collector.versions.get(1).getReleaseDate());
+    }
+
+    /** Axis serializes beans of arrays as multiRef elements following the response. */
+    @Test
+    public void readsMultiRefVersions() throws IOException {
+        String soapenc = " xmlns:soapenc=\"http://schemas.xmlsoap.org/soap/encoding/\"";
+        String beans = " xmlns:ns2=\"http://beans.soap.rpc.jira.atlassian.com\"";
+        Collector collector = read("<ns1:getVersionsResponse"
+                + " soapenv:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\""
+                + " xmlns:ns1=\"http://soap.rpc.jira.atlassian.com\">"
+                + "<getVersionsReturn soapenc:arrayType=\"ns2:RemoteVersion[3]\" xsi:type=\"soapenc:Array\""
+                + soapenc + beans + ">"
+                + "<getVersionsReturn href=\"#id0\"/><getVersionsReturn href=\"#id1\"/>"
+                + "<getVersionsReturn href=\"#id2\"/>"
+                + "</getVersionsReturn></ns1:getVersionsResponse>"
+                + multiRef("id0", "10000", "1.0.1", true, "id3")
+                + multiRef("id1", "10001", "1.0.2", false, "id4")
+                + multiRef("id2", "10002", "1.0.3", false, "id5")
+                + "<multiRef id=\"id3\" soapenc:root=\"0\" xsi:type=\"xsd:long\"" + soapenc + ">1</multiRef>"
+                + "<multiRef id=\"id4\" soapenc:root=\"0\" xsi:type=\"xsd:long\"" + soapenc + ">2</multiRef>"
+                + "<multiRef id=\"id5\" soapenc:root=\"0\" xsi:type=\"xsd:long\"" + soapenc + ">3</multiRef>",
+                Integer.MAX_VALUE);
+
+        assertEquals(2, collector.versions.size());
+        assertEquals("10001", collector.versions.get(0).getId());
+        assertEquals("1.0.2", collector.versions.get(0).getName());
+        assertEquals("10002", collector.versions.get(1).getId());
+        assertEquals("1.0.3", collector.versions.get(1).getName());
+    }
+
+    private static String multiRef(String ref, String id, String name, boolean released, String sequenceRef) {
+        return "<multiRef id=\"" + ref + "\" soapenc:root=\"0\""
+                + " soapenv:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\""
+                + " xsi:type=\"ns3:RemoteVersion\" xmlns:ns3=\"http://beans.soap.rpc.jira.atlassian.com\""
+                + " xmlns:soapenc=\"http://schemas.xmlsoap.org/soap/encoding/\">"
+                + "<archived xsi:type=\"xsd:boolean\">false</archived>"
+                + "<id xsi:type=\"xsd:string\">" + id + "</id>"
+                + "<name xsi:type=\"xsd:string\">" + name + "</name>"
+                + "<releaseDate xsi:type=\"xsd:dateTime\" xsi:nil=\"true\"/>"
+                + "<released xsi:type=\"xsd:boolean\">" + released + "</released>"
+                + "<sequence href=\"#" + sequenceRef + "\"/>"
+                + "</multiRef>";
+    }
+
+    @Test
+    public void stopsWhenVisitorAsks() throws IOException {
+        Collector collector = read("<ns1:getVersionsResponse xmlns:ns1=\"http://soap.rpc.jira.atlassian.com\">"
+                + inlineVersion("1", "1.0.1", false, null) + inlineVersion("2", "1.0.2", false, null)
+                + "</ns1:getVersionsResponse>", 1);
+        assertEquals(1, collector.versions.size());
+        assertEquals("1.0.1", collector.versions.get(0).getName());
+    }
+
+    @Test
+    public void faultIsThrownAsAxisFault() throws IOException {
+        try {
+            read("<soapenv:Fault><faultcode>soapenv:Server.userException</faultcode>"
+                    + "<faultstring>com.atlassian.jira.rpc.exception.RemoteAuthenticationException: "
+                    + "Session expired</faultstring><detail/></soapenv:Fault>", Integer.MAX_VALUE);
+            fail("fault expected");
+        } catch (AxisFault e) {
+            assertTrue(JiraSessionManager.isAuthenticationFault(e));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedResponseIsRejected() throws IOException {
+        read("<ns1:getVersionsResponse xmlns:ns1=\"http://soap.rpc.jira.atlassian.com\">"
+                + "<getVersionsReturn xsi:type=\"ns2:RemoteVersion\"><id>1", Integer.MAX_VALUE);
+    }
+}
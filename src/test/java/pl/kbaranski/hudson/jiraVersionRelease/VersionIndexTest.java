@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import pl.kbaranski.hudson.jiraVersionRelease.soap.RemoteVersion;
+
+/**
+ * Tests of {@link VersionIndex}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class VersionIndexTest {
+
+    private static RemoteVersion version(String id, String name, boolean released) {
+        return new RemoteVersion(id, name, false, null, released, null);
+    }
+
+    private static VersionIndex loaded() {
+        VersionIndex index = new VersionIndex();
+        index.reload(new RemoteVersion[] { version("1", "1.0.1", true), version("2", "1.0.2", false),
+                version("3", "rc-2", false), new RemoteVersion("4", "1.0.3", true, null, false, null) });
+        return index;
+    }
+
+    @Test
+    public void emptyIndexIsNotFresh() {
+        VersionIndex index = new VersionIndex();
+        assertFalse(index.isFresh());
+        assertTrue(index.lookup(1).isEmpty());
+    }
+
+    @Test
+    public void reloadSkipsReleasedAndArchivedVersions() {
+        VersionIndex index = loaded();
+        assertTrue(index.isFresh());
+        assertTrue(index.lookup(1).isEmpty());
+        assertTrue(index.lookup(3).isEmpty());
+        assertEquals(2, index.lookup(2).size());
+    }
+
+    @Test
+    public void lookupReturnsCopies() {
+        VersionIndex index = loaded();
+        List<RemoteVersion> found = index.lookup(2);
+        found.get(0).setReleased(true);
+        found.get(0).setName("changed");
+        List<RemoteVersion> again = index.lookup(2);
+        assertFalse(again.get(0).isReleased());
+        assertTrue(again.get(0).getName().endsWith("2"));
+    }
+
+    @Test
+    public void releasedVersionIsRemoved() {
+        VersionIndex index = loaded();
+        index.released(version("2", "1.0.2", true));
+        List<RemoteVersion> found = index.lookup(2);
+        assertEquals(1, found.size());
+        assertEquals("rc-2", found.get(0).getName());
+    }
+
+    @Test
+    public void lastReleasedIsTrackedPerPrefix() {
+        VersionIndex index = loaded();
+        assertEquals(-1, index.getLastReleased("1.0."));
+        index.released(version("2", "1.0.2", true));
+        index.released(version("9", "rc-9", true));
+        index.released(version("5", "rc-5", true));
+        assertEquals(2, index.getLastReleased("1.0."));
+        assertEquals(9, index.getLastReleased("rc-"));
+        assertEquals(-1, index.getLastReleased("beta-"));
+    }
+
+    @Test
+    public void lastReleasedIsKeptAfterInvalidation() {
+        VersionIndex index = loaded();
+        index.released(version("2", "1.0.2", true));
+        index.invalidate();
+        assertFalse(index.isFresh());
+        assertTrue(index.lookup(2).isEmpty());
+        assertEquals(2, index.getLastReleased("1.0."));
+    }
+
+    @Test
+    public void createdVersionIsAddedToLoadedIndexOnly() {
+        VersionIndex empty = new VersionIndex();
+        empty.created(version("7", "1.0.7", false));
+        assertFalse(empty.isFresh());
+
+        VersionIndex index = loaded();
+        index.created(version("7", "1.0.7", false));
+        assertEquals("1.0.7", index.lookup(7).get(0).getName());
+    }
+
+    @Test
+    public void versionIsFoundForPrefixEndingWithDigit() {
+        VersionIndex index = new VersionIndex();
+        index.reload(new RemoteVersion[] { version("1", "build-15", false), version("2", "1.0.105", false) });
+        // Prefiks "build-1" i kompilacja 5 albo prefiks "build-" i kompilacja 15
+        assertEquals("build-15", index.lookup(15).get(0).getName());
+        assertEquals(2, index.lookup(5).size());
+        assertTrue(index.lookup(1).isEmpty());
+        // Numer kompilacji nie zaczyna sie od zera
+        assertEquals(1, index.lookup(105).size());
+        assertTrue(index.lookup(10).isEmpty());
+    }
+
+    @Test
+    public void releasedVersionIsRemovedForAllPrefixes() {
+        VersionIndex index = new VersionIndex();
+        index.reload(new RemoteVersion[] { version("1", "build-15", false) });
+        index.released(version("1", "build-15", true));
+        assertTrue(index.lookup(5).isEmpty());
+        assertTrue(index.lookup(15).isEmpty());
+        assertEquals(5, index.getLastReleased("build-1"));
+        assertEquals(15, index.getLastReleased("build-"));
+    }
+
+    @Test
+    public void numberIsTakenFromEndOfName() {
+        assertEquals(15, VersionIndex.number("1.0.15"));
+        assertEquals(3, VersionIndex.number("3"));
+        assertEquals(-1, VersionIndex.number("1.0.x"));
+        assertEquals(-1, VersionIndex.number(null));
+        assertEquals(-1, VersionIndex.number("1.0.12345678901"));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ * 
+ * Copyright (c) 2010-2012, Krzysztof Barański.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package pl.kbaranski.hudson.jiraVersionRelease;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link VersionNameMatcher}.
+ * 
+ * @author Krzysztof Barański
+ * @since 1.2
+ */
+public class VersionNameMatcherTest {
+
+    @Test
+    public void matchesPrefixFollowedByBuildNumber() {
+        VersionNameMatcher.Lookup lookup = new VersionNameMatcher("1\\.0\\.").forBuild(15);
+        assertTrue(lookup.matches("1.0.15"));
+        assertEquals("1.0.", lookup.getPrefix());
+    }
+
+    @Test
+    public void rejectsOtherBuildNumbers() {
+        VersionNameMatcher.Lookup lookup = new VersionNameMatcher("1\\.0\\.").forBuild(5);
+        assertFalse(lookup.matches("1.0.15"));
+        assertFalse(lookup.matches("1.0.6"));
+        assertFalse(lookup.matches("1.0.50"));
+        assertNull(lookup.getPrefix());
+    }
+
+    @Test
+    public void prefixMustMatchWholeRestOfName() {
+        VersionNameMatcher.Lookup lookup = new VersionNameMatcher("1\\.0\\.").forBuild(7);
+        assertFalse(lookup.matches("x1.0.7"));
+        assertFalse(lookup.matches("1.0.-7"));
+        assertFalse(lookup.matches(null));
+    }
+
+    @Test
+    public void regularExpressionMayMatchManyPrefixes() {
+        VersionNameMatcher.Lookup lookup = new VersionNameMatcher("(rc|beta)-").forBuild(3);
+        assertTrue(lookup.matches("beta-3"));
+        assertEquals("beta-", lookup.getPrefix());
+        assertTrue(lookup.matches("rc-3"));
+        assertEquals("rc-", lookup.getPrefix());
+    }
+
+    @Test
+    public void prefixOfLastMatchIsKept() {
+        VersionNameMatcher.Lookup lookup = new VersionNameMatcher("v").forBuild(2);
+        assertTrue(lookup.matches("v2"));
+        assertFalse(lookup.matches("w2"));
+        assertEquals("v", lookup.getPrefix());
+    }
+
+    @Test
+    public void nullPrefixMeansBuildNumberOnly() {
+        VersionNameMatcher matcher = new VersionNameMatcher(null);
+        assertEquals("", matcher.getPrefixRegexp());
+        VersionNameMatcher.Lookup lookup = matcher.forBuild(42);
+        assertTrue(lookup.matches("42"));
+        assertEquals("", lookup.getPrefix());
+        assertFalse(lookup.matches("1.42"));
+    }
+}